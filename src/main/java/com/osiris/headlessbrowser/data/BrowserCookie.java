@@ -0,0 +1,33 @@
+package com.osiris.headlessbrowser.data;
+
+import java.net.HttpCookie;
+
+/**
+ * Cookie like it is returned by Playwrights' browserContext.cookies() and Puppeteers' page.cookies(). <br>
+ * Meant to be decoded directly from JSON, see {@link com.osiris.headlessbrowser.js.contexts.NodeContext#evaluate(String, Class)}.
+ */
+public class BrowserCookie {
+    public String name;
+    public String value;
+    public String domain;
+    public String path;
+    /**
+     * Unix time in seconds, -1 for session cookies.
+     */
+    public double expires;
+    public int size;
+    public boolean httpOnly;
+    public boolean secure;
+    public boolean session;
+    public String sameSite;
+
+    public HttpCookie toHttpCookie() {
+        HttpCookie cookie = new HttpCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath(path);
+        cookie.setMaxAge((long) expires);
+        cookie.setHttpOnly(httpOnly);
+        cookie.setSecure(secure);
+        return cookie;
+    }
+}
@@ -0,0 +1,34 @@
+package com.osiris.headlessbrowser.data;
+
+/**
+ * Memory usage of a Node.js process in bytes, like it is returned by process.memoryUsage(). <br>
+ * See {@link com.osiris.headlessbrowser.js.contexts.NodeContext#getMemoryUsage()}.
+ */
+public class NodeMemoryUsage {
+    /**
+     * Resident set size, the total memory allocated for the process.
+     */
+    public long rss;
+    /**
+     * Total size of the V8 heap.
+     */
+    public long heapTotal;
+    /**
+     * Used size of the V8 heap.
+     */
+    public long heapUsed;
+    /**
+     * Memory of C++ objects bound to JavaScript objects managed by V8.
+     */
+    public long external;
+    /**
+     * Memory allocated for ArrayBuffers and SharedArrayBuffers, also included in {@link #external}.
+     */
+    public long arrayBuffers;
+
+    @Override
+    public String toString() {
+        return "NodeMemoryUsage{rss=" + rss + ", heapTotal=" + heapTotal + ", heapUsed=" + heapUsed +
+                ", external=" + external + ", arrayBuffers=" + arrayBuffers + "}";
+    }
+}
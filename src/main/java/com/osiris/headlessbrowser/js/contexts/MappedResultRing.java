@@ -0,0 +1,172 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Preallocated file that is used as ring buffer for results, see {@link NodeContext#enableMappedResults(int)}. <br>
+ * Node.js writes results directly into it at the current ring position (without creating a file per result)
+ * and Java reads them through a {@link MappedByteBuffer}, thus without copying them into intermediate buffers. <br>
+ * Layout (big-endian):
+ * <pre>
+ *     int64 total bytes written (monotonic, including skipped bytes at the end of the ring)
+ *     SLOTS * (int64 request id, int64 absolute start position, int64 length)
+ *     byte[capacity] ring
+ * </pre>
+ * A result stays readable until the ring wraps around and overwrites it, which gets detected.
+ */
+public class MappedResultRing {
+    public static final int SLOTS = 256;
+    public static final int SLOT_LENGTH = 24;
+    public static final int HEADER_LENGTH = 8 + SLOTS * SLOT_LENGTH;
+
+    public final File file;
+    public final int capacity;
+    private final MappedByteBuffer buffer;
+
+    public MappedResultRing(File file, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE - HEADER_LENGTH)
+            throw new IllegalArgumentException("Invalid capacity " + capacity + "!");
+        this.file = file;
+        this.capacity = capacity;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER_LENGTH + (long) capacity);
+            // The mapping stays valid after the channel was closed
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + (long) capacity);
+        }
+    }
+
+    /**
+     * JavaScript code that defines the writeToJavaMapped(result, id) function.
+     */
+    public String getJsInitCode() {
+        String path = file.getAbsolutePath().replace("\\", "/");
+        return "" +
+                "var hbRing = { fd: require('fs').openSync('" + path + "', 'r+'), capacity: " + capacity + ", written: 0 };\n" +
+                "function writeToJavaMapped(result, id) {\n" +
+                "  const fs = require('fs');\n" +
+                "  const data = Buffer.from(result === undefined ? '' : '' + result, 'utf8');\n" +
+                "  if (data.length > hbRing.capacity)\n" +
+                "    throw new Error('Result of ' + data.length + ' bytes does not fit into the mapped result ring of ' + hbRing.capacity + ' bytes!');\n" +
+                "  let position = hbRing.written % hbRing.capacity;\n" +
+                "  if (position + data.length > hbRing.capacity) {\n" + // Doesn't fit at the end, thus start at the beginning again
+                "    hbRing.written += hbRing.capacity - position;\n" +
+                "    position = 0;\n" +
+                "  }\n" +
+                "  fs.writeSync(hbRing.fd, data, 0, data.length, " + HEADER_LENGTH + " + position);\n" +
+                "  const slot = Buffer.alloc(" + SLOT_LENGTH + ");\n" +
+                "  slot.writeBigInt64BE(BigInt(id), 0);\n" +
+                "  slot.writeBigInt64BE(BigInt(hbRing.written), 8);\n" +
+                "  slot.writeBigInt64BE(BigInt(data.length), 16);\n" +
+                "  fs.writeSync(hbRing.fd, slot, 0, slot.length, 8 + (id % " + SLOTS + ") * " + SLOT_LENGTH + ");\n" +
+                "  hbRing.written += data.length;\n" +
+                "  const written = Buffer.alloc(8);\n" +
+                "  written.writeBigInt64BE(BigInt(hbRing.written), 0);\n" +
+                "  fs.writeSync(hbRing.fd, written, 0, 8, 0);\n" +
+                "}\n";
+    }
+
+    /**
+     * Returns a read-only view of the result with the provided id, without copying it. <br>
+     * The view is only valid until the ring gets overwritten, see {@link Result#isOverwritten()}.
+     *
+     * @throws IOException if there is no result for this id (anymore).
+     */
+    public Result get(long id) throws IOException {
+        ByteBuffer view = buffer.duplicate(); // Own position/limit, thus thread-safe
+        int slotPosition = 8 + (int) (id % SLOTS) * SLOT_LENGTH;
+        long slotId = view.getLong(slotPosition);
+        long start = view.getLong(slotPosition + 8);
+        long length = view.getLong(slotPosition + 16);
+        if (slotId != id)
+            throw new IOException("Result " + id + " not found in mapped result ring (slot contains result " + slotId + ")!");
+        Result result = new Result(start, length);
+        if (result.isOverwritten())
+            throw new IOException("Result " + id + " was already overwritten, increase the mapped result rings' capacity!");
+        int position = HEADER_LENGTH + (int) (start % capacity);
+        view.limit(position + (int) length);
+        view.position(position);
+        result.data = view.slice().asReadOnlyBuffer();
+        return result;
+    }
+
+    /**
+     * Total amount of bytes written by Node.js.
+     */
+    public long getWritten() {
+        return buffer.getLong(0);
+    }
+
+    public class Result {
+        /**
+         * Absolute start position of this result.
+         */
+        public final long start;
+        public final long length;
+        /**
+         * Read-only view of the UTF-8 encoded result inside the mapped file.
+         */
+        public ByteBuffer data;
+
+        Result(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Returns true if Node.js already wrote so much data afterwards, that this result was (partially) overwritten.
+         */
+        public boolean isOverwritten() {
+            return getWritten() - start > capacity;
+        }
+
+        /**
+         * Decodes the result into a string and makes sure that it wasn't overwritten in the meantime.
+         */
+        public String getAsString() throws IOException {
+            String s = StandardCharsets.UTF_8.decode(data.duplicate()).toString();
+            if (isOverwritten())
+                throw new IOException("Result was overwritten while reading it, increase the mapped result rings' capacity!");
+            return s;
+        }
+
+        /**
+         * Returns a stream that reads directly from the mapped file.
+         */
+        public InputStream getInputStream() {
+            ByteBuffer view = data.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return view.hasRemaining() ? view.get() & 0xff : endOfStream();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) return 0;
+                    if (!view.hasRemaining()) return endOfStream();
+                    int count = Math.min(len, view.remaining());
+                    view.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return view.remaining();
+                }
+
+                private int endOfStream() throws IOException {
+                    if (isOverwritten())
+                        throw new IOException("Result was overwritten while reading it, increase the mapped result rings' capacity!");
+                    return -1;
+                }
+            };
+        }
+    }
+}
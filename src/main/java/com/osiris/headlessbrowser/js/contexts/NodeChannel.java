@@ -0,0 +1,465 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
+import com.osiris.headlessbrowser.utils.AsyncReader;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Binary framed request/response channel between Java and a Node.js process
+ * started with {@link #BOOTSTRAP_JS}, used by {@link NodeContext.Transport#FRAMED}. <br>
+ * Node.js connects to a local socket opened by this channel, so its stdout/stderr
+ * stay free for regular console output. <br>
+ * Every frame looks like this (big-endian): <br>
+ * <pre>
+ *     int32 length (of everything after this field)
+ *     int64 id     (correlation id of the request)
+ *     int8  type   (see TYPE_* constants)
+ *     int8  flags  (see FLAG_* constants)
+ *     byte[] body  (UTF-8)
+ * </pre>
+ */
+public class NodeChannel implements AutoCloseable {
+    public static final byte TYPE_HELLO = 0;
+    public static final byte TYPE_EXEC = 1;
+    public static final byte TYPE_EXEC_RESULT = 2;
+    public static final byte TYPE_DONE = 3;
+    public static final byte TYPE_ERROR = 4;
+    /**
+     * Like {@link #TYPE_EXEC_RESULT}, but the result is sent back in multiple {@link #TYPE_CHUNK} frames, followed by an empty {@link #TYPE_DONE}.
+     */
+    public static final byte TYPE_EXEC_STREAM = 5;
+    public static final byte TYPE_CHUNK = 6;
+    /**
+     * Calls a function defined via {@link NodeContext#defineFunction(String, String, String)}, body: JSON [name, [args...]]. <br>
+     * Answered with {@link #TYPE_DONE} containing the JSON encoded return value.
+     */
+    public static final byte TYPE_CALL = 7;
+    public static final byte FLAG_WRAP_IN_TRY_CATCH = 1;
+    public static final int HEADER_LENGTH = 10; // id + type + flags
+
+    /**
+     * Script executed by Node.js (via -e) instead of the interactive REPL. <br>
+     * Code is still evaluated by a REPL server, so top-level await and global declarations
+     * behave exactly like they do with {@link NodeContext.Transport#REPL}. <br>
+     * The "result" variable holds a separate value for each request, thus requests whose code awaits something don't see each others results. <br>
+     * Expects the channels' port as last argument and its token in the HB_CHANNEL_TOKEN environment variable.
+     */
+    public static final String BOOTSTRAP_JS = "" +
+            "const net = require('net');\n" +
+            "const repl = require('repl');\n" +
+            "const domain = require('domain');\n" +
+            "const { AsyncLocalStorage } = require('async_hooks');\n" +
+            "const { PassThrough, Writable } = require('stream');\n" +
+            "const TYPE_HELLO = 0, TYPE_EXEC = 1, TYPE_EXEC_RESULT = 2, TYPE_DONE = 3, TYPE_ERROR = 4, TYPE_EXEC_STREAM = 5, TYPE_CHUNK = 6, TYPE_CALL = 7;\n" +
+            "const FLAG_WRAP_IN_TRY_CATCH = 1;\n" +
+            "const CHUNK_SIZE = 65536;\n" +
+            "const socket = net.connect(Number(process.argv[process.argv.length - 1]), '127.0.0.1');\n" +
+            "const evalDomain = domain.create();\n" +
+            "const requests = new AsyncLocalStorage();\n" + // Id of the request whose code is running, also after awaits and in its callbacks
+            "const pending = new Set();\n" + // Ids of requests whose code didn't finish yet
+            "const results = new Map();\n" + // The value of 'result' of each request
+            "const streaming = new Set();\n" + // Ids whose result must be sent in chunks
+            // Requests run concurrently, thus 'result' is not a shared global, but a separate value for each request
+            "Object.defineProperty(globalThis, 'result', {\n" +
+            "  get() { return results.get(requests.getStore()); },\n" +
+            "  set(value) { const id = requests.getStore(); if (id !== undefined) results.set(id, value); }\n" +
+            "});\n" +
+            "const server = repl.start({ prompt: '', terminal: false, useGlobal: true, domain: evalDomain,\n" +
+            "  input: new PassThrough(), output: new Writable({ write(chunk, encoding, callback) { callback(); } }) });\n" +
+            "function send(id, type, body) {\n" +
+            "  const payload = typeof body === 'string' ? Buffer.from(body, 'utf8') : body;\n" +
+            "  const header = Buffer.allocUnsafe(14);\n" +
+            "  header.writeInt32BE(10 + payload.length, 0);\n" +
+            "  header.writeBigInt64BE(BigInt(id), 4);\n" +
+            "  header.writeInt8(type, 12);\n" +
+            "  header.writeInt8(0, 13);\n" +
+            "  socket.cork(); socket.write(header); socket.write(payload); socket.uncork();\n" +
+            "}\n" +
+            "function forget(id) { pending.delete(id); results.delete(id); }\n" +
+            "async function sendChunks(id, text) {\n" + // Slices the string, thus it never exists twice as a whole
+            "  for (let i = 0; i < text.length;) {\n" +
+            "    let end = Math.min(i + CHUNK_SIZE, text.length);\n" +
+            "    const c = text.charCodeAt(end - 1);\n" +
+            "    if (end < text.length && c >= 0xD800 && c <= 0xDBFF) end--;\n" + // Don't split surrogate pairs
+            "    send(id, TYPE_CHUNK, text.slice(i, end));\n" +
+            "    i = end;\n" +
+            "    if (socket.writableNeedDrain) await new Promise(resolve => socket.once('drain', resolve));\n" + // Java reads slower
+            "  }\n" +
+            "  send(id, TYPE_DONE, '');\n" +
+            "}\n" +
+            "globalThis.__hbDone = function (id, result) {\n" +
+            "  forget(id);\n" +
+            "  const text = result === undefined ? '' : typeof result === 'string' ? result : '' + result;\n" +
+            "  if (!streaming.delete(id)) return send(id, TYPE_DONE, text);\n" +
+            "  sendChunks(id, text);\n" +
+            "};\n" +
+            "globalThis.__hbFail = function (id, e) {\n" +
+            "  forget(id);\n" +
+            "  streaming.delete(id);\n" +
+            "  send(id, TYPE_ERROR, (e instanceof Error)\n" +
+            "    ? 'CAUGHT JS-EXCEPTION: ' + e.name + '\\n' + 'MESSAGE: ' + e.message + '\\n'\n" +
+            "      + 'LINE: ' + e.lineNumber + '\\n' + 'STACK: ' + e.stack + '\\n'\n" +
+            "    : 'CAUGHT JS-EXCEPTION: ' + e + '\\n');\n" +
+            "};\n" +
+            // Errors of code not wrapped in try/catch end up here, also if thrown after an await or in a callback
+            "evalDomain.on('error', e => {\n" +
+            "  const id = requests.getStore();\n" +
+            "  if (id !== undefined && pending.has(id)) __hbFail(id, e);\n" +
+            "  else console.error(e);\n" +
+            "});\n" +
+            "process.on('unhandledRejection', e => console.error(e));\n" +
+            "process.on('uncaughtException', e => console.error(e));\n" +
+            "function execute(id, code, returnResult, wrapInTryCatch) {\n" +
+            "  const done = '\\n__hbDone(\\'' + id + '\\', ' + (returnResult ? 'result' : 'undefined') + ');\\n';\n" +
+            "  const src = wrapInTryCatch\n" +
+            "    ? 'try{\\n' + code + done + '} catch (e){\\n__hbFail(\\'' + id + '\\', e);\\n}\\n'\n" +
+            "    : code + done;\n" +
+            "  pending.add(id);\n" +
+            "  requests.run(id, () => server.eval(src, server.context, 'JS-Code(' + id + ')', err => { if (err) __hbFail(id, err); }));\n" +
+            "}\n" +
+            "function call(id, body) {\n" + // No code to parse, the function was already compiled when it was defined
+            "  try {\n" +
+            "    const [name, args] = JSON.parse(body);\n" +
+            "    const f = globalThis.hbFunctions === undefined ? undefined : hbFunctions[name];\n" +
+            "    if (typeof f !== 'function') throw new Error('Function \\'' + name + '\\' is not defined!');\n" +
+            "    Promise.resolve(f(...args)).then(r => __hbDone(id, JSON.stringify(r === undefined ? null : r)), e => __hbFail(id, e));\n" +
+            "  } catch (e) {\n" +
+            "    __hbFail(id, e);\n" +
+            "  }\n" +
+            "}\n" +
+            "let buffered = Buffer.alloc(0);\n" +
+            "socket.on('data', chunk => {\n" +
+            "  buffered = buffered.length === 0 ? chunk : Buffer.concat([buffered, chunk]);\n" +
+            "  while (buffered.length >= 4 && buffered.length >= 4 + buffered.readInt32BE(0)) {\n" +
+            "    const length = buffered.readInt32BE(0);\n" +
+            "    const id = buffered.readBigInt64BE(4).toString();\n" +
+            "    const type = buffered.readInt8(12);\n" +
+            "    const flags = buffered.readInt8(13);\n" +
+            "    const body = buffered.toString('utf8', 14, 4 + length);\n" +
+            "    buffered = buffered.subarray(4 + length);\n" +
+            "    if (type === TYPE_EXEC_STREAM) streaming.add(id);\n" +
+            "    if (type === TYPE_EXEC || type === TYPE_EXEC_RESULT || type === TYPE_EXEC_STREAM)\n" +
+            "      execute(id, body, type !== TYPE_EXEC, (flags & FLAG_WRAP_IN_TRY_CATCH) !== 0);\n" +
+            "    else if (type === TYPE_CALL) call(id, body);\n" +
+            "  }\n" +
+            "});\n" +
+            "socket.on('connect', () => send(0, TYPE_HELLO, process.env.HB_CHANNEL_TOKEN || ''));\n" +
+            "socket.on('close', () => process.exit(0));\n";
+
+    public final ServerSocket serverSocket;
+    /**
+     * Random token Node.js must send back in its first frame, so that
+     * no other local process can take over this channel.
+     */
+    public final String token = UUID.randomUUID().toString();
+    /**
+     * Requests that were sent, but not answered yet, mapped by their id.
+     */
+    public final Map<Long, CompletableFuture<String>> pendingRequests = new ConcurrentHashMap<>();
+    /**
+     * Streamed results that were not completely received yet, mapped by their request id.
+     */
+    public final Map<Long, ResultInputStream> pendingStreams = new ConcurrentHashMap<>();
+    private Socket socket;
+    private DataOutputStream out;
+
+    public NodeChannel() throws IOException {
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Waits for the Node.js process to connect and validates its token. <br>
+     * Starts the thread that reads response frames afterwards.
+     *
+     * @param process   the Node.js process that runs {@link #BOOTSTRAP_JS}.
+     * @param timeoutMs max time to wait for the connection.
+     */
+    public void connect(Process process, int timeoutMs) throws IOException {
+        serverSocket.setSoTimeout(timeoutMs);
+        try {
+            socket = serverSocket.accept();
+        } catch (SocketTimeoutException e) {
+            throw new IOException("Node.js (alive=" + process.isAlive() + ") didn't connect within " + timeoutMs + "ms!", e);
+        } finally {
+            serverSocket.close(); // Only one connection is expected
+        }
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Frame hello = readFrame(in);
+        if (hello.type != TYPE_HELLO || !token.equals(hello.getBodyAsString())) {
+            socket.close();
+            throw new IOException("Invalid handshake from Node.js!");
+        }
+
+        AsyncReader.defaultExecutor.execute(() -> {
+            try {
+                while (true) {
+                    Frame frame = readFrame(in);
+                    if (frame.type == TYPE_CHUNK) {
+                        ResultInputStream stream = pendingStreams.get(frame.id);
+                        if (stream != null) stream.offer(frame.body);
+                        continue;
+                    }
+                    ResultInputStream stream = pendingStreams.remove(frame.id);
+                    if (stream != null) {
+                        if (frame.type == TYPE_ERROR)
+                            stream.fail(new NodeJsCodeException("Error during JavaScript code execution! Details: ",
+                                    Collections.singletonList(frame.getBodyAsString())));
+                        else
+                            stream.finish();
+                        continue;
+                    }
+                    CompletableFuture<String> future = pendingRequests.remove(frame.id);
+                    if (future == null) continue; // Timed out or unknown
+                    if (frame.type == TYPE_ERROR)
+                        future.completeExceptionally(new NodeJsCodeException("Error during JavaScript code execution! Details: ",
+                                Collections.singletonList(frame.getBodyAsString())));
+                    else
+                        future.complete(frame.getBodyAsString());
+                }
+            } catch (IOException e) {
+                failPendingRequests(e);
+            }
+        });
+    }
+
+    /**
+     * Sends the provided JavaScript code to Node.js.
+     *
+     * @param returnResult if true, the value of the "result" variable is returned once the code finished.
+     * @return a future that completes with the result (or an empty string), once Node.js answered.
+     */
+    public CompletableFuture<String> execute(long id, String jsCode, boolean returnResult, boolean wrapInTryCatch) throws IOException {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        pendingRequests.put(id, future);
+        try {
+            writeFrame(id, returnResult ? TYPE_EXEC_RESULT : TYPE_EXEC,
+                    wrapInTryCatch ? FLAG_WRAP_IN_TRY_CATCH : 0, jsCode.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            pendingRequests.remove(id);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Calls the function with the provided name, see {@link #TYPE_CALL}.
+     *
+     * @param argsJson the arguments as JSON array.
+     * @return a future that completes with the JSON encoded return value.
+     */
+    public CompletableFuture<String> call(long id, String name, String argsJson) throws IOException {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        pendingRequests.put(id, future);
+        try {
+            writeFrame(id, TYPE_CALL, (byte) 0, ("[" + NodeContext.gson.toJson(name) + "," + argsJson + "]").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            pendingRequests.remove(id);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Sends the provided JavaScript code to Node.js and returns a stream over the value of its "result" variable. <br>
+     * The result is transferred in chunks, which can be read while the rest is still being received.
+     */
+    public ResultInputStream executeStreaming(long id, String jsCode, boolean wrapInTryCatch) throws IOException {
+        ResultInputStream stream = new ResultInputStream();
+        pendingStreams.put(id, stream);
+        try {
+            writeFrame(id, TYPE_EXEC_STREAM, wrapInTryCatch ? FLAG_WRAP_IN_TRY_CATCH : 0, jsCode.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            pendingStreams.remove(id);
+            throw e;
+        }
+        return stream;
+    }
+
+    private synchronized void writeFrame(long id, byte type, byte flags, byte[] body) throws IOException {
+        out.writeInt(HEADER_LENGTH + body.length);
+        out.writeLong(id);
+        out.writeByte(type);
+        out.writeByte(flags);
+        out.write(body);
+        out.flush();
+    }
+
+    private static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        long id = in.readLong();
+        byte type = in.readByte();
+        byte flags = in.readByte();
+        byte[] body = new byte[length - HEADER_LENGTH];
+        in.readFully(body);
+        return new Frame(id, type, flags, body);
+    }
+
+    private void failPendingRequests(Exception cause) {
+        for (Long id : pendingRequests.keySet()) {
+            CompletableFuture<String> future = pendingRequests.remove(id);
+            if (future != null)
+                future.completeExceptionally(new IOException("Channel to Node.js closed!", cause));
+        }
+        for (Long id : pendingStreams.keySet()) {
+            ResultInputStream stream = pendingStreams.remove(id);
+            if (stream != null)
+                stream.fail(new IOException("Channel to Node.js closed!", cause));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        if (socket != null) socket.close();
+        failPendingRequests(new EOFException());
+    }
+
+    /**
+     * Stream over a result that is received in {@link #TYPE_CHUNK} frames. <br>
+     * Reading blocks until the next chunk arrives. If the JavaScript code failed,
+     * reading throws an {@link IOException} caused by the {@link NodeJsCodeException}. <br>
+     * At most {@link #MAX_BUFFERED_CHUNKS} chunks get buffered, after that receiving blocks until
+     * this stream is read (or closed), so that Node.js doesn't send faster than the result gets consumed.
+     */
+    public static class ResultInputStream extends InputStream {
+        public static final int MAX_BUFFERED_CHUNKS = 16;
+        private static final byte[] END = new byte[0];
+        /**
+         * Completes once the first chunk arrived or the result is complete,
+         * or exceptionally if the code failed before sending anything.
+         */
+        public final CompletableFuture<Void> started = new CompletableFuture<>();
+        /**
+         * Completes once all chunks were received, or exceptionally if the code failed.
+         */
+        public final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>(MAX_BUFFERED_CHUNKS);
+        private volatile Exception error;
+        private volatile boolean closed;
+        private byte[] current;
+        private int position;
+        private boolean ended;
+
+        /**
+         * Blocks while the buffer is full.
+         */
+        void offer(byte[] chunk) throws InterruptedIOException {
+            put(chunk);
+            started.complete(null);
+        }
+
+        /**
+         * Blocks while the buffer is full.
+         */
+        void finish() throws InterruptedIOException {
+            put(END);
+            started.complete(null);
+            finished.complete(null);
+        }
+
+        private void put(byte[] chunk) throws InterruptedIOException {
+            if (closed) return;
+            try {
+                chunks.put(chunk); // close() clears the buffer, thus this doesn't block forever
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Never blocks. Buffered chunks get discarded, since reading fails anyway.
+         */
+        public void fail(Exception e) {
+            error = e;
+            while (!chunks.offer(END)) chunks.clear();
+            started.completeExceptionally(e);
+            finished.completeExceptionally(e);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (current == null || position == current.length) {
+                if (ended || closed) return endOfStream();
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+                if (current == END) {
+                    ended = true;
+                    return endOfStream();
+                }
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        private int endOfStream() throws IOException {
+            if (error != null) throw new IOException(error);
+            return -1;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        /**
+         * Remaining chunks get discarded.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            chunks.clear();
+            current = null;
+        }
+    }
+
+    public static class Frame {
+        public final long id;
+        public final byte type;
+        public final byte flags;
+        public final byte[] body;
+
+        public Frame(long id, byte type, byte flags, byte[] body) {
+            this.id = id;
+            this.type = type;
+            this.flags = flags;
+            this.body = body;
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.osiris.headlessbrowser.js.contexts;
 
-import com.osiris.betterthread.BThreadManager;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import com.osiris.headlessbrowser.Versions;
+import com.osiris.headlessbrowser.data.NodeMemoryUsage;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
 import com.osiris.headlessbrowser.utils.*;
 import net.lingala.zip4j.ZipFile;
@@ -9,22 +11,20 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.Nullable;
 import org.jline.utils.OSUtils;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 
 import java.io.*;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
@@ -32,68 +32,210 @@ import static com.osiris.headlessbrowser.utils.OS.ARCH;
 import static com.osiris.headlessbrowser.utils.OS.TYPE;
 
 public class NodeContext implements AutoCloseable {
+    /**
+     * The {@link Transport} used by {@link NodeContext}s that were created without providing one.
+     */
+    public static Transport defaultTransport = Transport.REPL;
+    /**
+     * Used to decode the results of {@link #evaluate(String, Type)}.
+     */
+    public static Gson gson = new Gson();
+    /**
+     * Base url of the Node.js releases, used by {@link #install(String, boolean)}. <br>
+     * Can be changed to a mirror or a local directory (file: url) with the same layout
+     * (v&lt;version&gt;/SHASUMS256.txt and the archives next to it).
+     * Initialized from the "hbrowser.node.mirror" system property, defaults to https://nodejs.org/dist/.
+     */
+    public static String nodeDistributionUrl = System.getProperty("hbrowser.node.mirror", "https://nodejs.org/dist/");
+    /**
+     * The {@link #npmRegistry} of new {@link NodeContext}s. Initialized from the "hbrowser.npm.registry" system property, defaults to null.
+     */
+    public static String defaultNpmRegistry = System.getProperty("hbrowser.npm.registry");
+    /**
+     * The {@link #npmPackagesDir} of new {@link NodeContext}s. Initialized from the "hbrowser.npm.packages" system property, defaults to null.
+     */
+    public static File defaultNpmPackagesDir = System.getProperty("hbrowser.npm.packages") != null ?
+            new File(System.getProperty("hbrowser.npm.packages")) : null;
+
+    public final Transport transport;
+    /**
+     * Additional flags the node executable was started with, see {@link NodeContextBuilder}.
+     */
+    public final List<String> nodeArgs;
+    /**
+     * The startup snapshot Node.js was started from, or null, see {@link NodeSnapshots}.
+     */
+    public final File snapshotBlob;
+    /**
+     * Only set if {@link #transport} is {@link Transport#FRAMED}, null otherwise.
+     */
+    public final NodeChannel channel;
     public final Process process;
     public final AsyncReader processInput;
     public final AsyncReader processErrorInput;
     public final OutputStream processOutput;
     public final PrintStream debugOutput;
+    /**
+     * Result file of scripts that call writeToJava(result) without a request id.
+     * Per request results are written to {@link #getResultFile(long)} instead.
+     */
     public final File lastJsCodeExecutionResultFile;
     public final int timeout;
 
     public final File parentNodeDir;
     public static final AtomicLong jsFileId = new AtomicLong();
     public final File workingDir;
+    /**
+     * What was installed into the {@link #workingDir}, used to skip npm when a package is already installed.
+     */
+    public final NodeManifest manifest;
+    /**
+     * Default is {@link #defaultNpmRegistry}. If not null, npm and npx use this registry instead of https://registry.npmjs.org,
+     * for example a local registry or mirror.
+     */
+    public volatile String npmRegistry = defaultNpmRegistry;
+    /**
+     * Default is {@link #defaultNpmPackagesDir}. If not null, {@link #npmInstall(String)} installs packages from the tarballs
+     * in this directory (created via "npm pack", like name-1.0.0.tgz or scope-name-1.0.0.tgz) if available,
+     * instead of downloading them. Their dependencies are taken from the npm cache or {@link #npmRegistry} if needed.
+     */
+    public volatile File npmPackagesDir = defaultNpmPackagesDir;
+    /**
+     * Directory inside the {@link #workingDir} that is only used by this context,
+     * for its temporary result files. Gets deleted on {@link #close()}. <br>
+     * This allows multiple contexts (and thus windows) to share the same {@link #parentNodeDir}
+     * without overwriting each others results.
+     */
+    public final File contextDir;
+    private final AtomicLong resultIds = new AtomicLong();
+    /**
+     * Names of the functions defined via {@link #defineFunction(String, String, String)}.
+     */
+    private final Set<String> definedFunctions = ConcurrentHashMap.newKeySet();
+    /**
+     * Pending requests when using {@link Transport#REPL}, by their id. <br>
+     * Completed by {@link #onReplOutputLine(String)}, which parses the id out of the finish message.
+     */
+    private final Map<Long, ReplRequest> replRequests = new ConcurrentHashMap<>();
+    /**
+     * The last sent request that didn't finish yet, which receives the error lines that don't contain a request id.
+     */
+    private volatile ReplRequest activeReplRequest;
+    /**
+     * Defines __hbEval(id, code) in the REPL, which evaluates the provided code like it was typed into the REPL
+     * (thus top-level await and global declarations work), without having to write it to a file first. <br>
+     * Also defines __hbError(id, e), which prints the error as a single line (see {@link #ERROR_MARKER_START}),
+     * so that a multi-line error can't be mixed up with the output of the next request.
+     * Printed to stdout, thus it is always received before the finish message of the request. <br>
+     * Errors of code that is not wrapped in try/catch (also if thrown after an await) would only be printed as "Uncaught ..."
+     * by the REPL, thus they are additionally passed to __hbError, as long as the code didn't finish yet. <br>
+     * console.error() calls of the code are printed the same way, thus many requests can run at the same time
+     * and their errors still reach the right request. <br>
+     * Like with {@link Transport#FRAMED}, the "result" variable holds a separate value for each request,
+     * thus requests whose code awaits something don't see each others results. <br>
+     * Must be a single line.
+     */
+    private static final String REPL_BOOTSTRAP_JS = "" +
+            "globalThis.__hbEval = (() => { const requests = new (require('async_hooks').AsyncLocalStorage)(); const pending = new Set(); let replDomain = null; " +
+            "const results = new Map(); const forget = id => { results.delete(id); return pending.delete(id); }; " +
+            "Object.defineProperty(globalThis, 'result', { get() { return results.get(requests.getStore()); }, set(value) { results.set(requests.getStore(), value); } }); " +
+            "const consoleLog = console.log, consoleError = console.error; " +
+            "const report = (id, text) => consoleLog('" + "JS-EXCEPTION(' + id + ') ' + JSON.stringify(text)); " +
+            "console.error = (...args) => { const id = requests.getStore(); if (id === undefined) consoleError(...args); else report(id, require('util').format(...args)); }; " +
+            "globalThis.__hbError = (id, e) => report(id, (e instanceof Error) " +
+            "? 'CAUGHT JS-EXCEPTION: ' + e.name + '\\n' + 'MESSAGE: ' + e.message + '\\n' + 'LINE: ' + e.lineNumber + '\\n' + 'STACK: ' + e.stack + '\\n' " +
+            ": 'CAUGHT JS-EXCEPTION: ' + e + '\\n'); " +
+            "return (id, code) => { const r = require('repl').repl; " +
+            // The REPL catches errors via its domain, which is the active one while the REPL evaluates the __hbEval call
+            "if (replDomain === null && process.domain) { replDomain = process.domain; replDomain.on('error', e => { const active = requests.getStore(); if (forget(active)) __hbError(active, e); }); } " +
+            "pending.add(id); " +
+            "requests.run(id, () => r.eval(code, r.context, 'JS-Code(' + id + ')', e => { if (forget(id) && e) __hbError(id, e); })); }; })();";
+    private static final String FINISHED_MARKER_START = "Execution of JS-Code(";
+    private static final String FINISHED_MARKER_END = ") finished!";
+    /**
+     * Start of the error lines printed by __hbError, followed by the request id, ") " and the error details as JSON string.
+     */
+    private static final String ERROR_MARKER_START = "JS-EXCEPTION(";
+    private static final String ERROR_MARKER_END = ") ";
+    /**
+     * Null if not enabled, see {@link #enableMappedResults(int)}.
+     */
+    private volatile MappedResultRing mappedResults;
     public final File nodeExe;
     public final File npmExe;
     public final File npxExe;
     public File installationDir;
-
     /**
-     * Npm and npx commands are executed synchronously one after another to prevent
-     * concurrency issues that arise. <br>
-     * The result of a command is cached for 60 seconds.
+     * Shared by all contexts with the same {@link #installationDir}.
      */
-    public static final CopyOnWriteArrayList<CachedResult> cachedResults = new CopyOnWriteArrayList<>();
-    public static final Executor exec = Executors.newCachedThreadPool();
+    public final NodeInstallation installation;
+    /**
+     * Results of npm and npx commands, by working directory and command. <br>
+     * Identical commands that run at the same time share one execution,
+     * commands in the same working directory are executed one after another to prevent
+     * concurrency issues that arise, commands in different working directories run in parallel. <br>
+     * Successful results are cached for {@link #commandCacheTtlMs}.
+     */
+    public static final ConcurrentHashMap<String, CachedResult> cachedResults = new ConcurrentHashMap<>();
+    /**
+     * Default is 60 seconds. See {@link #cachedResults}.
+     */
+    public static volatile long commandCacheTtlMs = 60000;
+    private static final ConcurrentHashMap<String, Object> workingDirLocks = new ConcurrentHashMap<>();
+    /**
+     * Completes futures of scripts that didn't finish in time exceptionally
+     * and removes expired {@link #cachedResults}.
+     */
+    public static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "NodeContext-Timeouts");
+        t.setDaemon(true);
+        return t;
+    });
     public static class CachedResult{
-        public List<String> command;
-        public Process process;
-
-        public CachedResult(List<String> command, Process process) {
+        public final List<String> command;
+        public final File workingDir;
+        /**
+         * Completes with the finished process.
+         */
+        public final CompletableFuture<Process> finished = new CompletableFuture<>();
+        /**
+         * The finished process, or null if it's still running.
+         *
+         * @deprecated use {@link #finished}, which also allows waiting for the process.
+         */
+        @Deprecated
+        public volatile Process process;
+
+        public CachedResult(List<String> command, File workingDir) {
             this.command = command;
-            this.process = process;
-            synchronized (cachedResults){
-                cachedResults.add(this);
-            }
-            exec.execute(() -> {
-                try{
-                    Thread.sleep(60000);
-                    synchronized (cachedResults){
-                        cachedResults.remove(this);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            this.workingDir = workingDir;
         }
     }
+
+    /**
+     * Returns the cached result of this command in this working directory,
+     * or null if it wasn't executed in the last {@link #commandCacheTtlMs}.
+     */
+    public static CachedResult getCachedResultForCommand(File workingDir, List<String> command){
+        return cachedResults.get(getCommandKey(workingDir, command));
+    }
+
+    /**
+     * Returns the cached result of this command in any working directory,
+     * or null if it wasn't executed in the last {@link #commandCacheTtlMs}.
+     *
+     * @deprecated results are cached per working directory, use {@link #getCachedResultForCommand(File, List)}.
+     */
+    @Deprecated
     public static CachedResult getCachedResultForCommand(List<String> command){
-        synchronized (cachedResults){
-            for (CachedResult cachedResult : cachedResults) {
-                if(cachedResult.command.size() == command.size()){
-                    boolean allEquals = true;
-                    List<String> strings = cachedResult.command;
-                    for (int i = 0; i < strings.size(); i++) {
-                        if(!strings.get(i).equals(command.get(i))){
-                            allEquals = false;
-                            break;
-                        }
-                    }
-                    if(allEquals) return cachedResult;
-                }
-            }
-            return null;
+        for (CachedResult cachedResult : cachedResults.values()) {
+            if (cachedResult.command.equals(command)) return cachedResult;
         }
+        return null;
+    }
+
+    private static String getCommandKey(File workingDir, List<String> command) {
+        return workingDir.getAbsolutePath() + "|" + String.join("\0", command);
     }
 
     public NodeContext() {
@@ -108,7 +250,39 @@ public class NodeContext implements AutoCloseable {
      * @param timeout       the max time in seconds to wait for JavaScript code to finish. Set to 0 to disable.
      */
     public NodeContext(File parentNodeDir, OutputStream debugOutput, int timeout) {
+        this(parentNodeDir, debugOutput, timeout, defaultTransport);
+    }
+
+    /**
+     * See {@link #NodeContext(File, OutputStream, int)} for details.
+     *
+     * @param transport how JavaScript code and its results get exchanged with Node.js, see {@link Transport}.
+     */
+    public NodeContext(File parentNodeDir, OutputStream debugOutput, int timeout, Transport transport) {
+        this(parentNodeDir, debugOutput, timeout, transport, Collections.emptyList());
+    }
+
+    /**
+     * See {@link #NodeContext(File, OutputStream, int, Transport)} for details. <br>
+     * Use {@link NodeContextBuilder} to create the flags.
+     *
+     * @param nodeArgs additional flags passed to the node executable, like --max-old-space-size=256.
+     */
+    public NodeContext(File parentNodeDir, OutputStream debugOutput, int timeout, Transport transport, List<String> nodeArgs) {
+        this(parentNodeDir, debugOutput, timeout, transport, nodeArgs, null);
+    }
+
+    /**
+     * See {@link #NodeContext(File, OutputStream, int, Transport, List)} for details.
+     *
+     * @param snapshotInitJs if not null, Node.js starts from a startup snapshot containing the globals created by this code,
+     *                       which gets built once and is then reused, see {@link NodeSnapshots}.
+     */
+    public NodeContext(File parentNodeDir, OutputStream debugOutput, int timeout, Transport transport, List<String> nodeArgs,
+                       String snapshotInitJs) {
         this.timeout = timeout;
+        this.transport = Objects.requireNonNull(transport);
+        this.nodeArgs = Collections.unmodifiableList(new ArrayList<>(nodeArgs));
         if (debugOutput == null)
             this.debugOutput = new PrintStream(new TrashOutput());
         else
@@ -121,35 +295,31 @@ public class NodeContext implements AutoCloseable {
         this.workingDir = new File(this.parentNodeDir + "/node-js-working-dir");
         Objects.requireNonNull(workingDir);
         if (!workingDir.exists()) workingDir.mkdirs();
+        this.manifest = NodeManifest.get(workingDir);
         this.installationDir = new File(this.parentNodeDir + "/node-js-installation");
         Objects.requireNonNull(installationDir);
         if (!this.installationDir.exists()) this.installationDir.mkdirs();
-
         try {
-            // Download and install NodeJS into current working directory if no installation found
-            install(Versions.NODEJS, false);
-
-            File nodeExeFile, npmExeFile, npxExeFile;
-            if (TYPE.equals(OS.Type.WINDOWS)) {
-                nodeExeFile = new File(installationDir + "/node.exe");
-                npmExeFile = new File(installationDir + "/npm.cmd");
-                npxExeFile = new File(installationDir + "/npx.cmd");
-            } else { // Linux, mac and co.
-                nodeExeFile = new File(installationDir + "/bin/node");
-                npmExeFile = new File(installationDir + "/bin/npm");
-                npxExeFile = new File(installationDir + "/bin/npx");
-            }
-
-            if (!nodeExeFile.exists())
-                throw new FileNotFoundException(nodeExeFile.getAbsolutePath());
-            if (!npmExeFile.exists())
-                throw new FileNotFoundException(npmExeFile.getAbsolutePath());
-            if (!npxExeFile.exists())
-                throw new FileNotFoundException(npxExeFile.getAbsolutePath());
+            this.contextDir = Files.createTempDirectory(workingDir.toPath(), "context-").toFile();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-            nodeExe = nodeExeFile;
-            npmExe = npmExeFile;
-            npxExe = npxExeFile;
+        try {
+            // Download and install NodeJS into current working directory if no installation found.
+            // Only done once per installation directory, all other contexts reuse the resolved installation.
+            installation = NodeInstallation.resolve(installationDir, Versions.NODEJS,
+                    () -> install(Versions.NODEJS, false));
+            nodeExe = installation.nodeExe;
+            npmExe = installation.npmExe;
+            npxExe = installation.npxExe;
+
+            if (snapshotInitJs != null) {
+                long msStart = System.currentTimeMillis();
+                snapshotBlob = NodeSnapshots.getOrBuild(nodeExe, new File(this.parentNodeDir + "/snapshots"), snapshotInitJs);
+                out.println("Using snapshot " + snapshotBlob + " (took " + (System.currentTimeMillis() - msStart) + "ms).");
+            } else
+                snapshotBlob = null;
 
         } catch (RuntimeException e) {
             throw e;
@@ -161,8 +331,21 @@ public class NodeContext implements AutoCloseable {
         try {
             out.print("Initialising NodeJS...");
             out.flush();
-            ProcessBuilder processBuilder = new ProcessBuilder(Arrays.asList(
-                    nodeExe.getAbsolutePath(), "--interactive"));
+            ProcessBuilder processBuilder;
+            List<String> command = new ArrayList<>();
+            command.add(nodeExe.getAbsolutePath());
+            command.addAll(this.nodeArgs);
+            if (snapshotBlob != null) command.addAll(Arrays.asList("--snapshot-blob", snapshotBlob.getAbsolutePath()));
+            if (transport == Transport.FRAMED) {
+                channel = new NodeChannel();
+                command.addAll(Arrays.asList("-e", NodeChannel.BOOTSTRAP_JS, "" + channel.getPort()));
+                processBuilder = new ProcessBuilder(command);
+                processBuilder.environment().put("HB_CHANNEL_TOKEN", channel.token);
+            } else {
+                channel = null;
+                command.add("--interactive");
+                processBuilder = new ProcessBuilder(command);
+            }
             // Prepend node installation path to fix: https://github.com/npm/rfcs/issues/531 and https://github.com/Osiris-Team/HBrowser/issues/6
             updatePath(processBuilder, nodeExe);
             processBuilder.directory(workingDir);
@@ -177,32 +360,27 @@ public class NodeContext implements AutoCloseable {
             processInput = new AsyncReader(process.getInputStream(),
                     line -> out.println("[" + Instant.now().toString() + " " + getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) + "|LOG] " + line));
             processErrorInput = new AsyncReader(process.getErrorStream());
+            if (channel == null) {
+                processInput.listeners.add(this::onReplOutputLine);
+                processErrorInput.listeners.add(this::onReplErrorLine);
+            }
             processOutput = process.getOutputStream();
+            if (channel != null) channel.connect(process, 30000);
+            else writeSingleLine(REPL_BOOTSTRAP_JS);
             out.println(" SUCCESS!");
             out.println("Node-JS was started from: " + nodeExe);
 
-            Thread t = new Thread(() -> {
-                // Keeps the java application running until NodeJS closes
-                try {
-                    while (process.isAlive()) {
-                        Thread.sleep(5000);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            });
-            t.start();
-
             executeJavaScript("function sleep(ms) {\n" +
                     "  return new Promise(resolve => setTimeout(resolve, ms));\n" +
                     "}");
 
-            lastJsCodeExecutionResultFile = new File(workingDir + "/JavaScriptCodeResult.txt");
+            lastJsCodeExecutionResultFile = new File(contextDir + "/JavaScriptCodeResult.txt");
             if (!lastJsCodeExecutionResultFile.exists()) lastJsCodeExecutionResultFile.createNewFile();
             String resultFilePath = lastJsCodeExecutionResultFile.getAbsolutePath().replace("\\", "/"); // To avoid issues with indows file path formats
-            executeJavaScript("function writeToJava(result) {\n" +
+            String contextDirPath = contextDir.getAbsolutePath().replace("\\", "/");
+            executeJavaScript("function writeToJava(result, id) {\n" +
                     "var fs = require('fs');\n" +
-                    "var data = fs.writeFileSync('" + resultFilePath + "', result);\n" +
+                    "var data = fs.writeFileSync(id === undefined ? '" + resultFilePath + "' : '" + contextDirPath + "/result-' + id + '.txt', result);\n" +
                     "};\n" +
                     "console.log('Context initialised!');\n");
 
@@ -217,6 +395,10 @@ public class NodeContext implements AutoCloseable {
     }
 
     private void updatePath(ProcessBuilder processBuilder, File exeFile) {
+        if (installation != null && exeFile.getParentFile().equals(installation.nodeExe.getParentFile())) {
+            installation.updatePath(processBuilder); // Already computed
+            return;
+        }
         String pathSeparator = OSUtils.IS_WINDOWS ? ";" : ":";
         if (processBuilder.environment().get("PATH") != null) {
             processBuilder.environment().put("PATH", exeFile.getParent() + pathSeparator + processBuilder.environment().get("PATH"));
@@ -241,99 +423,72 @@ public class NodeContext implements AutoCloseable {
         }
 
         close(); // If this node context is still running
-        if(installationDir.exists()) FileUtils.deleteDirectory(installationDir);
-        installationDir.mkdirs();
 
-        String url;
+        String url = nodeDistributionUrl.endsWith("/") ? nodeDistributionUrl : nodeDistributionUrl + "/";
         if(version != null){
-            url = "https://nodejs.org/dist/v"+version+"/";
+            url += "v"+version+"/";
         } else{
-            url = "https://nodejs.org/dist/latest/";
+            url += "latest/";
         }
         printLnToDebug("Installing NodeJS release from '" + url + "'...");
         printLnToDebug("This devices' details: "+TYPE.name+" "+ ARCH.name()+" ("+ Utils.toString(ARCH.altNames)+")");
-        Document doc = Jsoup.connect(url).get();
+        // SHASUMS256.txt lists all files of the release, thus no need to parse the html directory listing
+        Map<String, String> checksums = FileDownload.fetchChecksums(url + "SHASUMS256.txt");
 
-        String downloadUrl = null;
         String fileName = null;
-        for (Element e :
-                doc.getElementsByTag("a")) {
-            fileName = new File(e.attr("href")).getName();
-            if (isCorrectFileForOs(fileName)) {
-                downloadUrl = url + fileName;
+        for (String name : checksums.keySet()) {
+            if (isCorrectFileForOs(name)) {
+                fileName = name;
                 break;
             }
         }
 
-        if (downloadUrl == null)
+        if (fileName == null)
             throw new FileNotFoundException("Failed to find latest NodeJS download url at '" + url + "' for OS '" + OS.TYPE.name + "' with ARCH '" + ARCH.name() + "'.");
+        String downloadUrl = url + fileName;
 
-        // Download the zip file and extract its contents
-        if (TYPE.equals(OS.Type.WINDOWS)) {
-            File downloadZip = new File(installationDir + "/"+fileName);
-            if (downloadZip.exists()) downloadZip.delete();
-            downloadZip.createNewFile();
-            DownloadTask downloadTask = new DownloadTask("Download", new BThreadManager(), downloadUrl, downloadZip, "zip");
-            downloadTask.start();
-            while (!downloadTask.isFinished()) {
-                printLnToDebug("Download-Task > " + downloadTask.getStatus());
-                Thread.sleep(1000);
-            }
-            printLnToDebug("Download-Task > " + downloadTask.getStatus());
-
-            debugOutput.print("Extracting Node.js files...");
-            debugOutput.flush();
-            ZipFile zipFile = new ZipFile(downloadZip);
-            zipFile.extractFile(zipFile.getFileHeaders().get(0).getFileName(), installationDir.getPath());
-            downloadZip.delete();
-            printLnToDebug(" SUCCESS!");
-        } else {
-            // Download .tar.gz file
-            File downloadFile = new File(installationDir + "/" + fileName);
-            if (downloadFile.exists()) downloadFile.delete();
-            downloadFile.createNewFile();
-            DownloadTask downloadTask = new DownloadTask("Download", new BThreadManager(), downloadUrl, downloadFile, "gzip", "tar.gz", "tar", "tar+gzip", "x-gtar", "x-gzip", "x-tgz");
-            downloadTask.start();
-            while (!downloadTask.isFinished()) {
-                printLnToDebug("Download-Task > " + downloadTask.getStatus());
-                Thread.sleep(1000);
-            }
-            printLnToDebug("Download-Task > " + downloadTask.getStatus());
-
-            debugOutput.print("Extracting Node.js files...");
-            debugOutput.flush();
-
-            // Use the preinstalled tar binary to extract .tar.gz file to ensure correct symlink extraction
-            String[] command = {"tar", "-xzvf", downloadFile.getAbsolutePath(), "-C", installationDir.getAbsolutePath()};
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-
-            // Capture the output of the tar command
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String l = line.toLowerCase();
-                    if (l.contains("error") || l.contains("warning")) {
-                        printLnToDebug("[TAR] " + line);
+        // Extracted next to the installation dir and only moved into place once complete and verified,
+        // thus a failed installation never replaces or leaves behind a partial one
+        File tmpDir = new File(installationDir.getPath() + "-" + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            if (TYPE.equals(OS.Type.WINDOWS)) {
+                // Download the archive (outside the installation dir, so that a partial download can be resumed) and verify it
+                File downloadFile = new File(parentNodeDir + "/downloads/" + fileName);
+                new FileDownload(downloadUrl, downloadFile)
+                        .expectedSha256(checksums.get(fileName))
+                        .onProgress(download -> printLnToDebug("Download-Task > " + download.getStatus()))
+                        .download();
+                printLnToDebug("Download-Task > Downloaded and verified " + fileName);
+
+                debugOutput.print("Extracting Node.js files...");
+                debugOutput.flush();
+                ZipFile zipFile = new ZipFile(downloadFile);
+                zipFile.extractFile(zipFile.getFileHeaders().get(0).getFileName(), tmpDir.getPath());
+                downloadFile.delete();
+                if (tmpDir.listFiles().length == 1) {
+                    File f = tmpDir.listFiles()[0];
+                    if (f.isDirectory()) {
+                        Utils.moveDirectoryContent(f, f.getParentFile());
                     }
                 }
+            } else {
+                // Extract the .tar.gz while downloading it (without the archives' top directory)
+                debugOutput.print("Downloading and extracting Node.js files...");
+                debugOutput.flush();
+                try (InputStream in = FileDownload.openVerifiedStream(downloadUrl, checksums.get(fileName))) {
+                    TarGzExtractor.extract(in, tmpDir, 1);
+                    byte[] rest = new byte[8192];
+                    while (in.read(rest) != -1) ; // Read to the end to verify the checksum
+                }
             }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("Tar extraction failed with exit code " + exitCode);
-            }
-
-            downloadFile.delete();
             printLnToDebug(" SUCCESS!");
-        }
 
-        if(installationDir.listFiles().length == 1){
-            File f = installationDir.listFiles()[0];
-            if(f.isDirectory()){
-                Utils.moveDirectoryContent(f, f.getParentFile());
-            }
+            NodeInstallation.invalidate(installationDir);
+            if (installationDir.exists()) FileUtils.deleteDirectory(installationDir);
+            Files.move(tmpDir.toPath(), installationDir.toPath());
+        } catch (Exception e) {
+            FileUtils.deleteQuietly(tmpDir);
+            throw e;
         }
     }
 
@@ -380,13 +535,22 @@ public class NodeContext implements AutoCloseable {
     public void close() throws Exception {
         if(process == null) return;
         printLnToDebug("CLOSING... " + this);
+        if (channel != null) channel.close();
         process.destroy();
         process.waitFor();
         process.destroyForcibly();
+        mappedResults = null;
+        FileUtils.deleteQuietly(contextDir); // Mapped result ring may not be deletable yet on Windows
         printLnToDebug("CLOSED " + this);
     }
 
+    /**
+     * Writes the provided line(s) directly into the Node.js REPL. <br>
+     * Only supported by {@link Transport#REPL}.
+     */
     public synchronized NodeContext writeLine(String line) throws IOException {
+        if (channel != null)
+            throw new UnsupportedOperationException("Writing lines directly is only supported by the " + Transport.REPL + " transport!");
         if (line.contains("\n")) {
             printLnToDebug("Writing multiple lines to NodeJS context:");
             printLnToDebug("START >>>>>>>>>");
@@ -410,18 +574,22 @@ public class NodeContext implements AutoCloseable {
             printLnToDebug("END <<<<<<<<<<<");
         } else {
             printLnToDebug("Writing line to NodeJS context: " + line);
-            processOutput.write("\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
-            processOutput.flush();
-            processOutput.write(".break\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
-            processOutput.flush();
-            processOutput.write((line + "\n").getBytes(StandardCharsets.UTF_8));
-            processOutput.flush();
-            processOutput.write(".break\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
-            processOutput.flush();
+            writeSingleLine(line);
         }
         return this;
     }
 
+    private synchronized void writeSingleLine(String line) throws IOException {
+        processOutput.write("\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
+        processOutput.flush();
+        processOutput.write(".break\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
+        processOutput.flush();
+        processOutput.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        processOutput.flush();
+        processOutput.write(".break\n".getBytes(StandardCharsets.UTF_8)); // To ensure that multi-lined code from before doesn't affect the next lines
+        processOutput.flush();
+    }
+
     /**
      * See {@link #executeJavaScript(String, int, boolean)} for details.
      */
@@ -435,108 +603,323 @@ public class NodeContext implements AutoCloseable {
      * Note that everything related to JavaScript gets printed/written to the {@link #debugOutput}, which <br>
      * means that you must have provided this {@link NodeContext} a {@link #debugOutput} at initialisation to see your codes output. <br>
      */
-    public synchronized NodeContext executeJavaScript(String jsCode, int timeout, boolean wrapInTryCatch) throws NodeJsCodeException {
-        File tmpJs = null;
+    public NodeContext executeJavaScript(String jsCode, int timeout, boolean wrapInTryCatch) throws NodeJsCodeException {
+        if (channel != null)
+            waitFor(executeViaChannel(jsCode, timeout, wrapInTryCatch, false));
+        else
+            waitFor(executeViaRepl(jsCode, timeout, wrapInTryCatch));
+        return this;
+    }
+
+    /**
+     * See {@link #executeJavaScriptAsync(String, int, boolean)} for details.
+     */
+    public CompletableFuture<NodeContext> executeJavaScriptAsync(String jsCode) {
+        return executeJavaScriptAsync(jsCode, timeout, true);
+    }
+
+    /**
+     * Asynchronous version of {@link #executeJavaScript(String, int, boolean)}, that returns directly. <br>
+     * Many scripts can be in flight at the same time over the same Node.js process (with every {@link Transport}),
+     * thus their awaits overlap and they complete in any order. <br>
+     * The returned future completes exceptionally with a {@link NodeJsCodeException} if the code failed or timed out.
+     */
+    public CompletableFuture<NodeContext> executeJavaScriptAsync(String jsCode, int timeout, boolean wrapInTryCatch) {
+        if (channel != null)
+            return executeViaChannel(jsCode, timeout, wrapInTryCatch, false).thenApply(result -> this);
+        return executeViaRepl(jsCode, timeout, wrapInTryCatch).thenApply(result -> this);
+    }
+
+    /**
+     * Sends the code to the REPL without waiting for it. <br>
+     * The returned future completes once Node.js printed the finish message (or exceptionally on errors and timeouts).
+     */
+    private CompletableFuture<Void> executeViaRepl(String jsCode, int timeout, boolean wrapInTryCatch) {
+        long jsId = jsFileId.incrementAndGet();
+        CompletableFuture<Void> future = new CompletableFuture<>();
         try {
-            // Writing stuff directly to the process output/NodeJs REPL console somehow is very error-prone.
-            // That's why instead we create a temp file with the js code in it and load it using the .load command.
-            long jsId = jsFileId.incrementAndGet();
+            // Writing stuff directly to the process output/NodeJs REPL console somehow is very error-prone,
+            // since the REPL evaluates multi-lined code line by line.
+            // That's why instead we send the code as a single JSON string to __hbEval, which evaluates it at once.
+            // This also means no temporary files.
             long msStart = System.currentTimeMillis();
-            tmpJs = new File(workingDir + "/temp" + jsId + ".js");
-            if (!tmpJs.exists()) tmpJs.createNewFile();
-
+            // The id is inserted via concatenation, so that echoed code is never mistaken for the finish message
+            String finishedJs = "console.log('" + FINISHED_MARKER_START + "' + " + jsId + " + '" + FINISHED_MARKER_END + "');\n";
             if (wrapInTryCatch) {
                 jsCode = "try{\n" + // Just to make sure that errors get definitively caught
                         jsCode + "\n" +
-                        "console.log('Execution of JS-Code(" + jsId + ") finished!');\n" +
+                        finishedJs +
                         "} catch (e){\n" +
-                        "  console.error('CAUGHT JS-EXCEPTION: ' + e.name + '\\n'" +
-                        "                 + 'MESSAGE: ' + e.message + '\\n'" +
-                        "                 + 'LINE: ' + e.lineNumber + '\\n'" +
-                        "                 + 'STACK: ' + e.stack+'\\n');\n" +
+                        "  __hbError(" + jsId + ", e);\n" +
                         "}\n"
                 ;
             } else {
                 jsCode = jsCode + "\n" +
-                        "console.log('Execution of JS-Code(" + jsId + ") finished!');\n";
+                        finishedJs;
             }
 
-            if (jsCode.contains("\n")) {
-                printLnToDebug("Executing following JS-Code(" + jsId + "): ");
-                printLnToDebug("JS-CODE START >");
-                String singleLine = null;
-                try (BufferedReader br = new BufferedReader(new StringReader(jsCode))) {
-                    while ((singleLine = br.readLine()) != null) {
-                        printLnToDebug(singleLine);
-                    }
-                }
-                printLnToDebug("JS-CODE END <");
-            } else {
-                printLnToDebug("Executing following JS-Code(" + jsId + "): " + jsCode);
+            printJsCodeToDebug(jsId, jsCode);
+
+            // Completed as soon as Node.js printed the finish message or an error,
+            // which means we don't have to poll and return right after the code finished.
+            ReplRequest request = new ReplRequest();
+            // Not on the thread that reads the output of Node.js, since callbacks of the returned future may execute more code and wait for it
+            request.finished.whenCompleteAsync((v, e) -> {
+                // Always clean up, also on errors and timeouts, otherwise waiters pile up in long-running contexts
+                replRequests.remove(jsId);
+                if (activeReplRequest == request) activeReplRequest = null;
+                printLnToDebug("JS-Code(" + jsId + ") took " + (System.currentTimeMillis() - msStart) + "ms.");
+                if (e != null) future.completeExceptionally(e);
+                else if (!request.errors.isEmpty())
+                    future.completeExceptionally(new NodeJsCodeException("Error during JavaScript code execution! Details: ", request.errors));
+                else future.complete(null);
+            }, AsyncReader.defaultExecutor);
+            if (timeout != 0) { // Otherwise we wait indefinitely for the script to finish
+                ScheduledFuture<?> timeoutTask = timeouts.schedule(() -> request.finished.completeExceptionally(
+                        new NodeJsCodeException("Script execution timeout of " + timeout + " seconds reached! This means that the script didn't finish within the last " + timeout + " seconds.", null)),
+                        timeout, TimeUnit.SECONDS);
+                request.finished.whenComplete((v, e) -> timeoutTask.cancel(false));
             }
-
-            AtomicBoolean wasExecuted = new AtomicBoolean();
-            List<String> errors = new ArrayList<>(2);
-            Consumer<String> consoleLogListener = line -> {
-                if (line.contains("JS-Code(" + jsId + ") finished!")) wasExecuted.set(true);
-            };
-            processInput.listeners.add(consoleLogListener);
-
-            Consumer<String> consoleErrorLogListener = line -> errors.add(line);
-            processErrorInput.listeners.add(consoleErrorLogListener);
-
-            Files.write(tmpJs.toPath(), jsCode.getBytes(StandardCharsets.UTF_8));
-            executeJavaScriptFromFile(tmpJs);
-            printLnToDebug("Waiting for JavaScript result...");
-            // Wait until we receive a response, like undefined
-
-            for (int i = 0; i < timeout * 10; i++) { // Example timeout = 30s * 10 = 300loops * 100ms = 30000ms = 30s
-                if (wasExecuted.get() || !errors.isEmpty())
-                    break;
-                else
-                    Thread.sleep(100); // Total of 30 seconds
+            synchronized (this) { // So that the active request is the one that was written last
+                replRequests.put(jsId, request);
+                activeReplRequest = request;
+                writeSingleLine("__hbEval(" + jsId + ", " + gson.toJson(jsCode) + ");");
             }
+        } catch (Exception e) {
+            replRequests.remove(jsId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 
-            if (timeout == 0) { // Since the timeout is 0 we wait indefinitely for the script to finish
-                while (!wasExecuted.get() && errors.isEmpty()) {
-                    Thread.sleep(100);
-                }
-            }
+    /**
+     * Completes the request whose id is contained in the finish message, if the line is one. <br>
+     * Constant cost per line, no matter how many requests are pending.
+     */
+    private void onReplOutputLine(String line) {
+        if (parseMarker(line, ERROR_MARKER_START, ERROR_MARKER_END) != -1) {
+            onReplErrorLine(line);
+            return;
+        }
+        long id = parseFinishedMarker(line);
+        if (id == -1) return;
+        ReplRequest request = replRequests.remove(id);
+        if (request != null) request.finished.complete(null);
+    }
 
-            printLnToDebug("Took " + (System.currentTimeMillis() - msStart) + "ms.");
+    /**
+     * Errors printed by __hbError (or console.error) fail the request with the contained id,
+     * any other line printed to stderr fails the last sent request that didn't finish yet.
+     */
+    private void onReplErrorLine(String line) {
+        ReplRequest request = activeReplRequest;
+        List<String> errors = Collections.singletonList(line);
+        long id = parseMarker(line, ERROR_MARKER_START, ERROR_MARKER_END);
+        if (id != -1) {
+            request = replRequests.get(id);
+            String details = line.substring(line.indexOf(ERROR_MARKER_END, line.indexOf(ERROR_MARKER_START)) + ERROR_MARKER_END.length());
+            errors = Arrays.asList(gson.fromJson(details, String.class).split("\n"));
+        }
+        if (request == null) return;
+        request.errors.addAll(errors);
+        request.finished.complete(null);
+    }
 
-            if (!errors.isEmpty()) {
-                throw new NodeJsCodeException("Error during JavaScript code execution! Details: ", errors);
-            }
+    /**
+     * Returns the id contained in a finish message like "Execution of JS-Code(12) finished!", or -1.
+     */
+    static long parseFinishedMarker(String line) {
+        return parseMarker(line, FINISHED_MARKER_START, FINISHED_MARKER_END);
+    }
 
-            if (!wasExecuted.get())
-                throw new NodeJsCodeException("Script execution timeout of 30 seconds reached! This means that the script didn't finish within the last 30 seconds.", null);
+    private static long parseMarker(String line, String markerStart, String markerEnd) {
+        int start = line.indexOf(markerStart);
+        if (start == -1) return -1;
+        start += markerStart.length();
+        int end = line.indexOf(markerEnd, start);
+        if (end == -1) return -1;
+        try {
+            return Long.parseLong(line.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
+    private static class ReplRequest {
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        final List<String> errors = new CopyOnWriteArrayList<>();
+    }
 
-            processErrorInput.listeners.remove(consoleErrorLogListener);
-            processInput.listeners.remove(consoleLogListener);
-            tmpJs.delete();
-        } catch (NodeJsCodeException e) {
-            tmpJs.delete();
-            throw e;
-        } catch (Exception e) {
-            if (tmpJs != null) tmpJs.delete();
-            throw new RuntimeException(e);
+    /**
+     * Sends the code over the {@link #channel}, which means no temporary files and no REPL parsing. <br>
+     * Only used when {@link #transport} is {@link Transport#FRAMED}.
+     *
+     * @param returnResult if true, the future completes with the value of the "result" variable, otherwise with an empty string.
+     */
+    private CompletableFuture<String> executeViaChannel(String jsCode, int timeout, boolean wrapInTryCatch, boolean returnResult) {
+        long jsId = jsFileId.incrementAndGet();
+        long msStart = System.currentTimeMillis();
+        CompletableFuture<String> future;
+        try {
+            printJsCodeToDebug(jsId, jsCode);
+            future = channel.execute(jsId, jsCode, returnResult, wrapInTryCatch);
+        } catch (IOException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return withChannelTimeout(jsId, future, timeout, msStart);
+    }
+
+    private CompletableFuture<String> withChannelTimeout(long jsId, CompletableFuture<String> future, int timeout, long msStart) {
+        if (timeout != 0) {
+            ScheduledFuture<?> timeoutTask = timeouts.schedule(() -> {
+                if (channel.pendingRequests.remove(jsId) != null)
+                    future.completeExceptionally(new NodeJsCodeException("Script execution timeout of " + timeout + " seconds reached! This means that the script didn't finish within the last " + timeout + " seconds.", null));
+            }, timeout, TimeUnit.SECONDS);
+            future.whenComplete((result, e) -> timeoutTask.cancel(false));
+        }
+        future.whenComplete((result, e) -> printLnToDebug("JS-Code(" + jsId + ") took " + (System.currentTimeMillis() - msStart) + "ms."));
+        return future;
+    }
+
+    /**
+     * Defines a function in this context, that can then be called via {@link #callFunction(String, Object...)}. <br>
+     * Meant for operations that are executed often with different values: the function is parsed and compiled only once,
+     * and calls pass their arguments as JSON, instead of building a new script with the values inserted into it. <br>
+     * Does nothing if a function with this name was already defined in this context. Example:
+     * <pre>
+     *     ctx.defineFunction("fill", "selector, value", "await page.fill(selector, value);");
+     *     ctx.callFunction("fill", "#name", "John's");
+     * </pre>
+     *
+     * @param params the functions' parameter names, comma separated.
+     * @param body   the functions' code, which may use await and return a JSON serializable value.
+     */
+    public NodeContext defineFunction(String name, String params, String body) throws NodeJsCodeException {
+        if (definedFunctions.contains(name)) return this;
+        synchronized (definedFunctions) {
+            if (definedFunctions.contains(name)) return this;
+            executeJavaScript("if (globalThis.hbFunctions === undefined) globalThis.hbFunctions = {};\n" +
+                    "hbFunctions[" + gson.toJson(name) + "] = async function (" + params + ") {\n" +
+                    body + "\n" +
+                    "};\n", timeout, false);
+            definedFunctions.add(name);
         }
         return this;
     }
 
+    /**
+     * Returns true if a function with this name was defined via {@link #defineFunction(String, String, String)}.
+     */
+    public boolean isFunctionDefined(String name) {
+        return definedFunctions.contains(name);
+    }
+
+    /**
+     * Calls the function with the provided name and arguments, see {@link #defineFunction(String, String, String)}. <br>
+     * The arguments are passed as JSON, thus they don't need any quoting or escaping.
+     */
+    public NodeContext callFunction(String name, Object... args) throws NodeJsCodeException {
+        callFunctionAndGetResult(Object.class, name, args);
+        return this;
+    }
+
+    /**
+     * Same as {@link #callFunction(String, Object...)}, but returns the functions' return value decoded into the provided type.
+     */
+    public <T> T callFunctionAndGetResult(Type type, String name, Object... args) throws NodeJsCodeException {
+        return waitFor(callFunctionAsync(type, name, args));
+    }
+
+    private static String getCallFunctionJs(String name, Object... args) {
+        return "var result = await hbFunctions[" + gson.toJson(name) + "](..." + gson.toJson(args == null ? new Object[0] : args) + ");";
+    }
+
+    /**
+     * Asynchronous version of {@link #callFunctionAndGetResult(Type, String, Object...)}.
+     */
+    public <T> CompletableFuture<T> callFunctionAsync(Type type, String name, Object... args) {
+        String argsJson = gson.toJson(args == null ? new Object[0] : args);
+        if (channel == null)
+            return evaluateViaRepl(getCallFunctionJs(name, args), timeout, type);
+        long jsId = jsFileId.incrementAndGet();
+        long msStart = System.currentTimeMillis();
+        CompletableFuture<String> future;
+        try {
+            printLnToDebug("JS-Code(" + jsId + ") calls function '" + name + "' with: " + argsJson);
+            future = channel.call(jsId, name, argsJson);
+        } catch (IOException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return withChannelTimeout(jsId, future, timeout, msStart)
+                .thenApply(json -> gson.fromJson(new JsonReader(new StringReader(json)), type));
+    }
+
+    /**
+     * Blocks until the provided future completes and unwraps its {@link NodeJsCodeException} if there is one.
+     */
+    public static <T> T waitFor(CompletableFuture<T> future) throws NodeJsCodeException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NodeJsCodeException) throw (NodeJsCodeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void printJsCodeToDebug(long jsId, String jsCode) throws IOException {
+        if (jsCode.contains("\n")) {
+            printLnToDebug("Executing following JS-Code(" + jsId + "): ");
+            printLnToDebug("JS-CODE START >");
+            String singleLine = null;
+            try (BufferedReader br = new BufferedReader(new StringReader(jsCode))) {
+                while ((singleLine = br.readLine()) != null) {
+                    printLnToDebug(singleLine);
+                }
+            }
+            printLnToDebug("JS-CODE END <");
+        } else {
+            printLnToDebug("Executing following JS-Code(" + jsId + "): " + jsCode);
+        }
+    }
+
     /**
      * See {@link #executeJavaScript(String, int, boolean)} for details.
      */
-    public synchronized String executeJSAndGetResult(String jsCode) {
+    public String executeJSAndGetResult(String jsCode) {
         return executeJSAndGetResult(jsCode, timeout, true);
     }
 
+    /**
+     * See {@link #executeJSAndGetResultAsync(String, int, boolean)} for details.
+     */
+    public CompletableFuture<String> executeJSAndGetResultAsync(String jsCode) {
+        return executeJSAndGetResultAsync(jsCode, timeout, true);
+    }
+
+    /**
+     * Asynchronous version of {@link #executeJSAndGetResult(String, int, boolean)}, that returns directly. <br>
+     * See {@link #executeJavaScriptAsync(String, int, boolean)} for details.
+     */
+    public CompletableFuture<String> executeJSAndGetResultAsync(String jsCode, int timeout, boolean wrapInTryCatch) {
+        if (channel != null)
+            return executeViaChannel(jsCode, timeout, wrapInTryCatch, true);
+        return executeJSAndGetResultViaRepl(jsCode, timeout, wrapInTryCatch);
+    }
+
     /**
      * Expects: [val1, val2, ...] <br>
      * or expects: val1, val2, ... <br>
+     *
+     * @deprecated breaks for values that contain commas, use {@link #evaluate(String, Class)} with String[].class instead.
      */
+    @Deprecated
     public String[] parseJSStringArrayToJavaStringArray(String jsCodeResult) {
         String[] array = jsCodeResult.replace("[", "")
                 .replace("]", "")
@@ -564,39 +947,254 @@ public class NodeContext implements AutoCloseable {
      * <pre>
      *     var result = InsertYourFunctionsResultHere;
      * </pre>
-     * That result will get returned to this Java method. <br>
+     * That result will get returned to this Java method, converted to a string, exactly as it is (the same for all {@link Transport}s). <br>
      * See {@link #executeJavaScript(String)} for details.
      *
      * @param timeout 30 seconds is the default, set to 0 to disable.
      */
-    public synchronized String executeJSAndGetResult(String jsCode, int timeout, boolean wrapInTryCatch) {
+    public String executeJSAndGetResult(String jsCode, int timeout, boolean wrapInTryCatch) {
         try {
-            executeJavaScript(jsCode + "\n"
-                    + "writeToJava(result);\n", timeout, wrapInTryCatch);
-
-            StringBuilder result = new StringBuilder();
-            String line = null;
-            try (BufferedReader bufferedReader = new BufferedReader(new FileReader(lastJsCodeExecutionResultFile))) {
-                while ((line = bufferedReader.readLine()) != null) {
-                    result.append(line + "\n");
-                }
-            }
+            return waitFor(executeJSAndGetResultAsync(jsCode, timeout, wrapInTryCatch));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            // Clear the files content because we already got what we need
-            try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(lastJsCodeExecutionResultFile))) {
-                bufferedWriter.write("");
+    /**
+     * See {@link #executeJSAndGetResultStream(String, int, boolean)} for details.
+     */
+    public InputStream executeJSAndGetResultStream(String jsCode) throws NodeJsCodeException, IOException {
+        return executeJSAndGetResultStream(jsCode, timeout, true);
+    }
+
+    /**
+     * Same as {@link #executeJSAndGetResult(String, int, boolean)}, but returns a stream over the UTF-8 encoded result,
+     * instead of reading the complete result into a string. Recommended for large results (like the html of big pages). <br>
+     * With {@link Transport#FRAMED} the result is transferred in chunks, that can be read while the rest is still being received.
+     * Receiving pauses (also for other scripts) while too many chunks are buffered, until the stream gets read further or closed. <br>
+     * With {@link Transport#REPL} the stream reads directly from the result file. <br>
+     * Remember to close the stream.
+     */
+    public InputStream executeJSAndGetResultStream(String jsCode, int timeout, boolean wrapInTryCatch) throws NodeJsCodeException, IOException {
+        if (channel == null)
+            return executeJSAndGetResultStreamViaRepl(jsCode, timeout, wrapInTryCatch);
+        long jsId = jsFileId.incrementAndGet();
+        long msStart = System.currentTimeMillis();
+        printJsCodeToDebug(jsId, jsCode);
+        NodeChannel.ResultInputStream stream = channel.executeStreaming(jsId, jsCode, wrapInTryCatch);
+        if (timeout != 0) {
+            ScheduledFuture<?> timeoutTask = timeouts.schedule(() -> {
+                if (channel.pendingStreams.remove(jsId) != null)
+                    stream.fail(new NodeJsCodeException("Script execution timeout of " + timeout + " seconds reached! This means that the script didn't finish within the last " + timeout + " seconds.", null));
+            }, timeout, TimeUnit.SECONDS);
+            stream.started.whenComplete((v, e) -> timeoutTask.cancel(false)); // Chunks only get sent once the code finished
+        }
+        stream.finished.whenComplete((v, e) -> printLnToDebug("JS-Code(" + jsId + ") took " + (System.currentTimeMillis() - msStart) + "ms."));
+        waitFor(stream.started); // To throw errors here instead of on the first read
+        return stream;
+    }
+
+    /**
+     * See {@link #executeJSAndGetResultStream(String, int, boolean)} for details.
+     */
+    public Reader executeJSAndGetResultReader(String jsCode) throws NodeJsCodeException, IOException {
+        return new InputStreamReader(executeJSAndGetResultStream(jsCode), StandardCharsets.UTF_8);
+    }
+
+    private InputStream executeJSAndGetResultStreamViaRepl(String jsCode, int timeout, boolean wrapInTryCatch) throws NodeJsCodeException, IOException {
+        long resultId = resultIds.incrementAndGet();
+        waitFor(executeViaRepl(jsCode + "\n"
+                + getWriteResultJs(resultId), timeout, wrapInTryCatch));
+        MappedResultRing ring = mappedResults;
+        if (ring != null) return ring.get(resultId).getInputStream();
+        File resultFile = getResultFile(resultId);
+        return new FileInputStream(resultFile) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                resultFile.delete();
             }
-            return result.toString();
+        };
+    }
+
+    private String getWriteResultJs(long resultId) {
+        return (mappedResults != null ? "writeToJavaMapped(result, " : "writeToJava(result, ") + resultId + ");\n";
+    }
+
+    /**
+     * Enables memory-mapped result transfer for this context, with a preallocated ring file of the provided size,
+     * that gets created inside the {@link #contextDir}. Recommended for many and/or large results
+     * (like screenshots as base64, full DOM dumps or bulk data extraction). <br>
+     * Node.js then writes each result directly into the ring at the current position, instead of creating a new file per result,
+     * and Java reads it through a {@link java.nio.MappedByteBuffer}, without copying it into intermediate buffers. <br>
+     * Results larger than the capacity fail with a {@link NodeJsCodeException}. If so many results are produced that
+     * the ring wraps around before an older result was read, reading it fails with an {@link IOException}. <br>
+     * Only supported by {@link Transport#REPL}, since {@link Transport#FRAMED} doesn't use files for results.
+     *
+     * @param capacity the rings' size in bytes, for example 64 MB (64 * 1024 * 1024).
+     */
+    public synchronized NodeContext enableMappedResults(int capacity) throws IOException, NodeJsCodeException {
+        if (channel != null)
+            throw new UnsupportedOperationException("Mapped results are only supported by the " + Transport.REPL + " transport!");
+        if (mappedResults != null) throw new IllegalStateException("Mapped results are already enabled!");
+        MappedResultRing ring = new MappedResultRing(new File(contextDir + "/results.ring"), capacity);
+        executeJavaScript(ring.getJsInitCode(), timeout, false);
+        mappedResults = ring;
+        return this;
+    }
+
+    /**
+     * Returns the mapped result ring, or null if not enabled via {@link #enableMappedResults(int)}.
+     */
+    public MappedResultRing getMappedResults() {
+        return mappedResults;
+    }
+
+    /**
+     * Returns the current memory usage of the Node.js process (process.memoryUsage()).
+     */
+    public NodeMemoryUsage getMemoryUsage() {
+        return evaluate("var result = process.memoryUsage();", NodeMemoryUsage.class);
+    }
+
+    /**
+     * Runs a full garbage collection in the Node.js process and returns its memory usage afterwards. <br>
+     * Uses the gc function exposed via --expose-gc (see {@link NodeContextBuilder#exposeGc}),
+     * otherwise enables it at runtime.
+     */
+    public NodeMemoryUsage gc() {
+        return evaluate("" +
+                "var result = (() => {\n" +
+                "  let gc = globalThis.gc;\n" +
+                "  if (typeof gc !== 'function') {\n" +
+                "    require('v8').setFlagsFromString('--expose-gc');\n" +
+                "    gc = require('vm').runInNewContext('gc');\n" +
+                "  }\n" +
+                "  gc();\n" +
+                "  return process.memoryUsage();\n" +
+                "})();", NodeMemoryUsage.class);
+    }
+
+    /**
+     * Returns the file Node.js writes the result of the request with the provided id to, see {@link #contextDir}.
+     */
+    public File getResultFile(long resultId) {
+        return new File(contextDir + "/result-" + resultId + ".txt");
+    }
+
+    /**
+     * See {@link #evaluate(String, Type)} for details.
+     */
+    public <T> T evaluate(String jsCode, Class<T> type) {
+        return evaluate(jsCode, (Type) type);
+    }
+
+    /**
+     * Same as {@link #executeJSAndGetResult(String)}, but the "result" variable can hold any JSON serializable
+     * value (objects, arrays, numbers, booleans, strings or null), which gets decoded into the provided type. <br>
+     * Example:
+     * <pre>
+     *     String[] urls = ctx.evaluate("var result = ['https://a.com', 'https://b.com/?a,b'];", String[].class);
+     * </pre>
+     * This replaces building and parsing custom string formats, since
+     * the value is serialized once via JSON.stringify and decoded via a streaming {@link JsonReader}.
+     *
+     * @param type the type to decode the result into, generic types can be created via {@link com.google.gson.reflect.TypeToken}.
+     */
+    public <T> T evaluate(String jsCode, Type type) {
+        try {
+            return waitFor(evaluateAsync(jsCode, type));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * See {@link #evaluateAsync(String, Type)} for details.
+     */
+    public <T> CompletableFuture<T> evaluateAsync(String jsCode, Class<T> type) {
+        return evaluateAsync(jsCode, (Type) type);
+    }
+
+    /**
+     * Asynchronous version of {@link #evaluate(String, Type)}.
+     */
+    public <T> CompletableFuture<T> evaluateAsync(String jsCode, Type type) {
+        if (channel != null)
+            return executeViaChannel(toJsonResult(jsCode), timeout, true, true)
+                    .thenApply(json -> gson.fromJson(new JsonReader(new StringReader(json)), type));
+        return evaluateViaRepl(jsCode, timeout, type);
+    }
+
+    private static String toJsonResult(String jsCode) {
+        return jsCode + "\n" +
+                "result = JSON.stringify(result === undefined ? null : result);\n";
+    }
+
+    private <T> CompletableFuture<T> evaluateViaRepl(String jsCode, int timeout, Type type) {
+        long resultId = resultIds.incrementAndGet();
+        return executeViaRepl(toJsonResult(jsCode) +
+                getWriteResultJs(resultId), timeout, true).thenApply(v -> {
+            try {
+                return readJsonResult(resultId, type);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private <T> T readJsonResult(long resultId, Type type) throws IOException {
+        MappedResultRing ring = mappedResults;
+        if (ring != null) {
+            MappedResultRing.Result result = ring.get(resultId);
+            T value = gson.fromJson(new JsonReader(new InputStreamReader(result.getInputStream(), StandardCharsets.UTF_8)), type);
+            if (result.isOverwritten())
+                throw new IOException("Result was overwritten while reading it, increase the mapped result rings' capacity!");
+            return value;
+        }
+        File resultFile = getResultFile(resultId);
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(resultFile), StandardCharsets.UTF_8)))) {
+            return gson.fromJson(reader, type);
+        } finally {
+            resultFile.delete();
+        }
+    }
+
+    private CompletableFuture<String> executeJSAndGetResultViaRepl(String jsCode, int timeout, boolean wrapInTryCatch) {
+        long resultId = resultIds.incrementAndGet();
+        return executeViaRepl(jsCode + "\n"
+                + getWriteResultJs(resultId), timeout, wrapInTryCatch).thenApply(v -> {
+            try {
+                return readResult(resultId);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private String readResult(long resultId) throws IOException {
+        MappedResultRing ring = mappedResults;
+        if (ring != null) return ring.get(resultId).getAsString();
+        File resultFile = getResultFile(resultId);
+        try {
+            // Exactly like the mapped result and the FRAMED transport, without changing line endings or appending any
+            return new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            resultFile.delete(); // Since we already got what we need
+        }
+    }
+
     /**
      * Executes JavaScript code from the provided {@link File} in the <br>
      * current {@link NodeContext}.
      */
     public NodeContext executeJavaScriptFromFile(File jsFile) throws IOException {
+        if (channel != null) { // Like .load, this doesn't wait for the code to finish
+            channel.execute(jsFileId.incrementAndGet(), new String(Files.readAllBytes(jsFile.toPath()), StandardCharsets.UTF_8),
+                    false, false);
+            return this;
+        }
         writeLine(".load " + jsFile.getAbsolutePath());
         return this;
     }
@@ -610,20 +1208,102 @@ public class NodeContext implements AutoCloseable {
         return npmInstall(null);
     }
 
+    /**
+     * Installs the provided package, unless the {@link #manifest} shows that it is already installed.
+     *
+     * @param packageName name of the package, optionally with version, for example "playwright@1.44.1".
+     *                    If null, installs the packages of the package.json.
+     */
     public NodeContext npmInstall(String packageName) throws IOException, InterruptedException {
-        printLnToDebug("[NPM-INSTALL] Installing '" + packageName + "'...");
+        String key = packageName != null ? "npm install " + packageName : null;
+        if (key != null && manifest.isSatisfied(key)) {
+            printLnToDebug("[NPM-INSTALL] '" + packageName + "' is already installed (" + manifest.getEntry(key).version + ").");
+            return this;
+        }
+        File tarball = packageName != null ? findLocalPackage(packageName) : null;
+        printLnToDebug("[NPM-INSTALL] Installing '" + packageName + "'" + (tarball != null ? " from '" + tarball + "'" : "") + "...");
         Process result;
-        if (packageName != null)
+        if (tarball != null)
+            result = executeNpmWithArgs("install", tarball.getAbsolutePath(), "--prefer-offline", "--no-audit", "--no-fund");
+        else if (packageName != null)
             result = executeNpmWithArgs("install", packageName);
         else
             result = executeNpmWithArgs("install");
         if (result.exitValue() != 0)
             throw new IOException("Failed to install/download " + packageName + "!" +
                     " Npm finished with exit code '" + result.exitValue() + "', npmExe="+npmExe);
+        if (key != null) {
+            File packageJson = getPackageJson(packageName);
+            String version = NodeManifest.readPackageVersion(packageJson);
+            if (version != null) manifest.record(key, version, Collections.singletonList(packageJson));
+        }
         printLnToDebug("[NPM-INSTALL] Installed '" + packageName + "' successfully!");
         return this;
     }
 
+    /**
+     * Returns the package.json of the provided installed package.
+     *
+     * @param packageName name of the package, optionally with version, for example "@scope/name@1.0.0".
+     */
+    public File getPackageJson(String packageName) {
+        return new File(workingDir + "/node_modules/" + getPackageNameAndVersion(packageName)[0] + "/package.json");
+    }
+
+    /**
+     * Returns the tarball of the provided package inside the {@link #npmPackagesDir},
+     * or null if there is none or no {@link #npmPackagesDir} is set. <br>
+     * If no version is provided, the tarball with the highest version is returned.
+     * Version ranges and tags (like ^1.2.0 or latest) can't be resolved locally, thus return null (installed from the registry).
+     *
+     * @param packageName name of the package, optionally with version, for example "@scope/name@1.0.0".
+     */
+    public File findLocalPackage(String packageName) {
+        File dir = npmPackagesDir;
+        if (dir == null || !dir.isDirectory()) return null;
+        String[] nameAndVersion = getPackageNameAndVersion(packageName);
+        // Same as npm pack: @scope/name -> scope-name
+        String prefix = (nameAndVersion[0].startsWith("@") ? nameAndVersion[0].substring(1).replace('/', '-') : nameAndVersion[0]) + "-";
+        if (nameAndVersion[1] != null) {
+            File tarball = new File(dir, prefix + nameAndVersion[1] + ".tgz");
+            return tarball.exists() ? tarball : null;
+        }
+        File best = null;
+        String bestVersion = null;
+        File[] files = dir.listFiles();
+        if (files == null) return null;
+        for (File f : files) {
+            String fileName = f.getName();
+            if (!fileName.startsWith(prefix) || !fileName.endsWith(".tgz")) continue;
+            String version = fileName.substring(prefix.length(), fileName.length() - ".tgz".length());
+            if (version.isEmpty() || !Character.isDigit(version.charAt(0))) continue; // Other package, like name-utils-1.0.0.tgz
+            if (bestVersion == null || compareVersions(version, bestVersion) > 0) {
+                best = f;
+                bestVersion = version;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the name and the version (or null) of the provided package, for example ["@scope/name", "1.0.0"].
+     */
+    private static String[] getPackageNameAndVersion(String packageName) {
+        int versionIndex = packageName.indexOf('@', 1); // Scoped packages start with @
+        if (versionIndex == -1) return new String[]{packageName, null};
+        return new String[]{packageName.substring(0, versionIndex), packageName.substring(versionIndex + 1)};
+    }
+
+    private static int compareVersions(String a, String b) {
+        String[] partsA = a.split("[.-]"), partsB = b.split("[.-]");
+        for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
+            int result = partsA[i].matches("\\d+") && partsB[i].matches("\\d+") ?
+                    Long.compare(Long.parseLong(partsA[i]), Long.parseLong(partsB[i])) : partsA[i].compareTo(partsB[i]);
+            if (result != 0) return result;
+        }
+        return Integer.compare(partsB.length, partsA.length); // 1.0.0 is newer than 1.0.0-beta
+    }
+
     /**
      * Executes the "npm" command with the provided arguments. <br>
      * Waits until it finishes and then returns the {@link Process}. <br>
@@ -635,53 +1315,63 @@ public class NodeContext implements AutoCloseable {
      * @throws InterruptedException
      */
     public Process executeNpmWithArgs(String... args) throws IOException, InterruptedException {
-        synchronized (cachedResults){
-            List<String> commands = new ArrayList<>();
-            if(!OS.isWindows()){
-                commands.add(""+npmExe); // encapsulate in backticks doesnt work on linux
-            } else{
-                commands.add("\"" + npmExe + "\""); // encapsulate in backticks to prevent special chars like ( causing issues
-            }
+        return executeCached(npmExe, "NPM", args);
+    }
+
+    public Process executeNpxWithArgs(String... args) throws IOException, InterruptedException {
+        return executeCached(npxExe, "NPX", args);
+    }
 
-            if (args != null && args.length != 0) commands.addAll(Arrays.asList(args));
-            printLnToDebug("Execute: " + commands);
-            CachedResult cachedResult = getCachedResultForCommand(commands);
-            if(cachedResult != null) {
-                printLnToDebug("Found cached result for this command!");
-                return cachedResult.process;
+    /**
+     * Executes the provided executable in the {@link #workingDir}, or returns the result of an
+     * identical execution, see {@link #cachedResults}.
+     */
+    private Process executeCached(File exe, String name, String... args) throws IOException, InterruptedException {
+        List<String> commands = new ArrayList<>();
+        if(!OS.isWindows()){
+            commands.add(""+exe); // encapsulate in backticks doesnt work on linux
+        } else{
+            commands.add("\"" + exe + "\""); // encapsulate in backticks to prevent special chars like ( causing issues
+        }
+        String registry = npmRegistry;
+        if (registry != null) commands.add("--registry=" + registry); // Before the args, so that npx doesn't pass it to the package
+        if (args != null && args.length != 0) commands.addAll(Arrays.asList(args));
+        printLnToDebug("Execute: " + commands);
+
+        String key = getCommandKey(workingDir, commands);
+        CachedResult result = new CachedResult(commands, workingDir);
+        CachedResult cachedResult = cachedResults.putIfAbsent(key, result);
+        if (cachedResult != null) {
+            printLnToDebug("Found cached result for this command!");
+            try {
+                return cachedResult.finished.get(); // Waits if it's still running
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new RuntimeException(e.getCause());
             }
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            updatePath(builder, npmExe);
-            Process process = builder.directory(workingDir).start();
-            new AsyncReader(process.getInputStream()).listeners.add(line -> printLnToDebug("[NPM] " + line));
-            new AsyncReader(process.getErrorStream()).listeners.add(line -> System.err.println("[NPM-ERROR] " + line));
-            while (process.isAlive())
-                Thread.sleep(500);
-            new CachedResult(commands, process);
-            return process;
         }
-    }
 
-    public Process executeNpxWithArgs(String... args) throws IOException, InterruptedException {
-        synchronized (cachedResults){
-            List<String> commands = new ArrayList<>();
-            if(!OS.isWindows()) {
-                commands.add("" + npxExe); // encapsulate in backticks doesnt work on linux
-            } else
-                commands.add("\"" + npxExe + "\""); // encapsulate in backticks to prevent special chars like ( causing issues
-            if (args != null && args.length != 0) commands.addAll(Arrays.asList(args));
-            printLnToDebug("Execute: " + commands);
-            CachedResult cachedResult = getCachedResultForCommand(commands);
-            if(cachedResult != null) return cachedResult.process;
-            ProcessBuilder builder = new ProcessBuilder(commands);
-            updatePath(builder, npxExe);
-            Process process = builder.directory(workingDir).start();
-            new AsyncReader(process.getInputStream()).listeners.add(line -> printLnToDebug("[NPX] " + line));
-            new AsyncReader(process.getErrorStream()).listeners.add(line -> System.err.println("[NPX-ERROR] " + line));
-            while (process.isAlive())
-                Thread.sleep(500);
-            new CachedResult(commands, process);
+        try {
+            Process process;
+            synchronized (workingDirLocks.computeIfAbsent(workingDir.getAbsolutePath(), dir -> new Object())) {
+                ProcessBuilder builder = new ProcessBuilder(commands);
+                updatePath(builder, exe);
+                process = builder.directory(workingDir).start();
+                new AsyncReader(process.getInputStream()).listeners.add(line -> printLnToDebug("[" + name + "] " + line));
+                new AsyncReader(process.getErrorStream()).listeners.add(line -> System.err.println("[" + name + "-ERROR] " + line));
+                process.waitFor();
+            }
+            result.process = process;
+            result.finished.complete(process);
+            if (process.exitValue() == 0)
+                timeouts.schedule(() -> cachedResults.remove(key, result), commandCacheTtlMs, TimeUnit.MILLISECONDS);
+            else
+                cachedResults.remove(key, result); // Allow retrying failed commands right away
             return process;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cachedResults.remove(key, result);
+            result.finished.completeExceptionally(e);
+            throw e;
         }
     }
 
@@ -739,6 +1429,32 @@ public class NodeContext implements AutoCloseable {
         return this;
     }
 
+    /**
+     * Removes a listener that was added via {@link #onPrintLine(Consumer)}.
+     */
+    public NodeContext removePrintLineListener(Consumer<String> listener) {
+        processInput.listeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Returns the amount of listeners registered at the Node.js consoles output and error output. <br>
+     * Should stay constant over time, unless listeners are added via {@link #onPrintLine(Consumer)} and never removed.
+     */
+    public int getActiveListenerCount() {
+        return processInput.listeners.size() + processErrorInput.listeners.size();
+    }
+
+    /**
+     * Returns the amount of requests that are currently waiting for Node.js to finish their code. <br>
+     * Should be 0 once all executions returned, also if they failed or timed out.
+     */
+    public int getActiveWaiterCount() {
+        if (channel != null)
+            return channel.pendingRequests.size() + channel.pendingStreams.size();
+        return replRequests.size();
+    }
+
     public File getParentNodeDir() {
         return parentNodeDir;
     }
@@ -771,5 +1487,28 @@ public class NodeContext implements AutoCloseable {
         return timeout;
     }
 
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * How JavaScript code and its results get exchanged with the Node.js process.
+     */
+    public enum Transport {
+        /**
+         * Node.js runs as interactive REPL. Each code snippet is sent inline as a single line, that calls __hbEval(id, code)
+         * with the code as JSON string, completion is detected by parsing the request id out of the finish message in the console output,
+         * and errors (also printed via console.error) by parsing the request id out of the error messages.
+         * Requests don't wait for each other, thus many can be in flight at the same time. Results are written to a separate file per request
+         * (see {@link #getResultFile(long)}), or into the {@link MappedResultRing} if enabled via {@link #enableMappedResults(int)}.
+         */
+        REPL,
+        /**
+         * Node.js runs {@link NodeChannel#BOOTSTRAP_JS} instead of the REPL. Code and results travel as
+         * length-prefixed frames tagged with a correlation id over a local socket, see {@link NodeChannel}. <br>
+         * Note that output printed via console.error is not treated as error, only thrown exceptions are.
+         */
+        FRAMED
+    }
 
 }
@@ -0,0 +1,218 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates {@link NodeContext}s with custom Node.js/V8 flags, for example to limit the memory of each context
+ * when running many of them on the same machine. Example:
+ * <pre>
+ *     NodeContext ctx = new NodeContextBuilder()
+ *         .maxOldSpaceSizeMb(128)
+ *         .singleThreadedGc(true)
+ *         .build();
+ * </pre>
+ * Can also be used as factory for a {@link NodeContextPool} via builder::build. <br>
+ * For offline installations see {@link #npmPackagesDir}, {@link #npmRegistry} and {@link NodeContext#nodeDistributionUrl}.
+ */
+public class NodeContextBuilder {
+    /**
+     * Default is null. See {@link NodeContext#NodeContext(File, OutputStream, int)} for details.
+     */
+    public File parentNodeDir = null;
+    /**
+     * Default is null. Otherwise, writes/prints debug related information and JavaScript code console output to the provided {@link OutputStream}.
+     */
+    public OutputStream debugOutput = null;
+    /**
+     * Default is 30s. The max time in seconds to wait for JavaScript code to finish. Set to 0 to disable.
+     */
+    public int timeout = 30;
+    /**
+     * Default is null, which means {@link NodeContext#defaultTransport}.
+     */
+    public NodeContext.Transport transport = null;
+    /**
+     * Default is 0, which means Node.js decides. Max size of V8's old generation heap in megabytes (--max-old-space-size).
+     */
+    public int maxOldSpaceSizeMb = 0;
+    /**
+     * Default is 0, which means Node.js decides. Max size of a V8 semi space (young generation) in megabytes (--max-semi-space-size).
+     */
+    public int maxSemiSpaceSizeMb = 0;
+    /**
+     * Default is false. Disables V8's JIT compiler (--jitless), which lowers memory usage, but makes code execution slower.
+     */
+    public boolean jitless = false;
+    /**
+     * Default is false. Runs V8's garbage collection on the main thread only (--single-threaded-gc),
+     * which lowers the amount of threads per context.
+     */
+    public boolean singleThreadedGc = false;
+    /**
+     * Default is false. Exposes the global gc() function (--expose-gc), see {@link NodeContext#gc()}.
+     */
+    public boolean exposeGc = false;
+    /**
+     * Default is null. Otherwise, Node.js starts from this startup snapshot (--snapshot-blob).
+     */
+    public File snapshotBlob = null;
+    /**
+     * Default is null. Otherwise, Node.js starts from a startup snapshot containing the globals created by this code,
+     * which gets built on first use and is cached inside the {@link #parentNodeDir}, see {@link NodeSnapshots}.
+     */
+    public String snapshotInitJs = null;
+    /**
+     * Default is null, which means {@link NodeContext#defaultNpmRegistry}. See {@link NodeContext#npmRegistry} for details.
+     */
+    public String npmRegistry = null;
+    /**
+     * Default is null, which means {@link NodeContext#defaultNpmPackagesDir}. See {@link NodeContext#npmPackagesDir} for details.
+     */
+    public File npmPackagesDir = null;
+    /**
+     * Additional flags passed to the node executable as they are.
+     */
+    public List<String> additionalNodeArgs = new ArrayList<>();
+
+    /**
+     * Returns the flags the node executable gets started with.
+     */
+    public List<String> getNodeArgs() {
+        List<String> args = new ArrayList<>();
+        if (maxOldSpaceSizeMb > 0) args.add("--max-old-space-size=" + maxOldSpaceSizeMb);
+        if (maxSemiSpaceSizeMb > 0) args.add("--max-semi-space-size=" + maxSemiSpaceSizeMb);
+        if (jitless) args.add("--jitless");
+        if (singleThreadedGc) args.add("--single-threaded-gc");
+        if (exposeGc) args.add("--expose-gc");
+        if (snapshotBlob != null) {
+            args.add("--snapshot-blob");
+            args.add(snapshotBlob.getAbsolutePath());
+        }
+        args.addAll(additionalNodeArgs);
+        return args;
+    }
+
+    public NodeContext build() {
+        NodeContext ctx = new NodeContext(parentNodeDir, debugOutput, timeout,
+                transport == null ? NodeContext.defaultTransport : transport, getNodeArgs(), snapshotInitJs);
+        if (npmRegistry != null) ctx.npmRegistry = npmRegistry;
+        if (npmPackagesDir != null) ctx.npmPackagesDir = npmPackagesDir;
+        return ctx;
+    }
+
+    /**
+     * For details see {@link #parentNodeDir}.
+     */
+    public NodeContextBuilder parentNodeDir(File val) {
+        this.parentNodeDir = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #debugOutput}.
+     */
+    public NodeContextBuilder debugOutput(OutputStream val) {
+        this.debugOutput = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #timeout}.
+     */
+    public NodeContextBuilder timeout(int val) {
+        this.timeout = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #transport}.
+     */
+    public NodeContextBuilder transport(NodeContext.Transport val) {
+        this.transport = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #maxOldSpaceSizeMb}.
+     */
+    public NodeContextBuilder maxOldSpaceSizeMb(int val) {
+        this.maxOldSpaceSizeMb = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #maxSemiSpaceSizeMb}.
+     */
+    public NodeContextBuilder maxSemiSpaceSizeMb(int val) {
+        this.maxSemiSpaceSizeMb = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #jitless}.
+     */
+    public NodeContextBuilder jitless(boolean val) {
+        this.jitless = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #singleThreadedGc}.
+     */
+    public NodeContextBuilder singleThreadedGc(boolean val) {
+        this.singleThreadedGc = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #exposeGc}.
+     */
+    public NodeContextBuilder exposeGc(boolean val) {
+        this.exposeGc = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #snapshotBlob}.
+     */
+    public NodeContextBuilder snapshotBlob(File val) {
+        this.snapshotBlob = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #snapshotInitJs}.
+     */
+    public NodeContextBuilder snapshotInitJs(String val) {
+        this.snapshotInitJs = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #npmRegistry}.
+     */
+    public NodeContextBuilder npmRegistry(String val) {
+        this.npmRegistry = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #npmPackagesDir}.
+     */
+    public NodeContextBuilder npmPackagesDir(File val) {
+        this.npmPackagesDir = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #additionalNodeArgs}.
+     */
+    public NodeContextBuilder additionalNodeArgs(String... val) {
+        this.additionalNodeArgs.addAll(Arrays.asList(val));
+        return this;
+    }
+}
@@ -0,0 +1,225 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool of warm {@link NodeContext}s, that were already initialised (modules installed and required)
+ * and can be handed out in milliseconds. <br>
+ * Contexts get created up to {@link #maxSize}, idle contexts above {@link #minSize} get closed
+ * after {@link #maxIdleMillis} and dead contexts get replaced. <br>
+ * Every pool is meant for one kind of context, see {@link #kind}, for example
+ * the pools returned by {@link com.osiris.headlessbrowser.windows.WindowBuilder#buildPlaywrightContextPool(int, int)}.
+ */
+public class NodeContextPool implements AutoCloseable {
+    /**
+     * Describes what the {@link #initializer} prepares, so that windows can check
+     * if the pool provides the contexts they expect.
+     */
+    public final String kind;
+    public final Supplier<NodeContext> factory;
+    public final Initializer initializer;
+    public final int minSize;
+    public final int maxSize;
+    public final long maxIdleMillis;
+    public final long maintenanceIntervalMillis = 5000;
+
+    private final LinkedBlockingDeque<IdleContext> idle = new LinkedBlockingDeque<>();
+    /**
+     * Amount of contexts that are idle, in use or currently being created.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "NodeContextPool-Maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean closed;
+
+    /**
+     * See {@link #NodeContextPool(String, Supplier, Initializer, int, int, long)} for details. <br>
+     * Idle contexts get closed after 5 minutes.
+     */
+    public NodeContextPool(String kind, Supplier<NodeContext> factory, Initializer initializer, int minSize, int maxSize) {
+        this(kind, factory, initializer, minSize, maxSize, 300000);
+    }
+
+    /**
+     * Creates the pool and starts initialising {@link #minSize} contexts in the background.
+     *
+     * @param kind          see {@link #kind}.
+     * @param factory       creates new (not initialised) contexts.
+     * @param initializer   runs once for each new context, before it gets handed out for the first time.
+     * @param minSize       amount of contexts to keep, even if they are idle.
+     * @param maxSize       max amount of contexts (idle and in use).
+     * @param maxIdleMillis time after which idle contexts above the min size get closed.
+     */
+    public NodeContextPool(String kind, Supplier<NodeContext> factory, Initializer initializer, int minSize, int maxSize, long maxIdleMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid sizes min=" + minSize + " max=" + maxSize + "!");
+        this.kind = kind;
+        this.factory = factory;
+        this.initializer = initializer;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdleMillis = maxIdleMillis;
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * See {@link #acquire(long)} for details. Waits indefinitely.
+     */
+    public NodeContext acquire() throws Exception {
+        return acquire(0);
+    }
+
+    /**
+     * Returns a healthy idle context, or creates a new one if there is none and {@link #maxSize} is not reached yet,
+     * otherwise waits until another context gets released. <br>
+     * Remember to {@link #release(NodeContext)} the context once done.
+     *
+     * @param timeoutMillis max time to wait for a context, 0 to wait indefinitely.
+     * @throws TimeoutException if no context was available in time.
+     */
+    public NodeContext acquire(long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            if (closed) throw new IllegalStateException("Pool was already closed!");
+            IdleContext idleContext = idle.pollFirst();
+            if (idleContext == null) {
+                if (reserveSlot()) return createContext();
+                long remaining = timeoutMillis == 0 ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    throw new TimeoutException("No NodeContext available after " + timeoutMillis + "ms (max size " + maxSize + " reached)!");
+                // Wake up regularly, since closed contexts free up slots too
+                idleContext = idle.pollFirst(Math.min(remaining, 500), TimeUnit.MILLISECONDS);
+                if (idleContext == null) continue;
+            }
+            if (isHealthy(idleContext.context)) return idleContext.context;
+            destroy(idleContext.context);
+        }
+    }
+
+    /**
+     * Returns the provided context (that was acquired from this pool) back to the pool. <br>
+     * Contexts that are not healthy anymore get closed instead.
+     */
+    public void release(NodeContext context) {
+        if (closed || !isHealthy(context)) {
+            destroy(context);
+            return;
+        }
+        idle.offerFirst(new IdleContext(context, System.currentTimeMillis())); // Most recently used first, to keep it warm
+    }
+
+    /**
+     * Returns true if the Node.js process is alive and responds to a trivial script.
+     */
+    public boolean isHealthy(NodeContext context) {
+        if (!context.getProcess().isAlive()) return false;
+        try {
+            return context.executeJSAndGetResult("var result = 'ok';", 5, true).trim().equals("ok");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean reserveSlot() {
+        while (true) {
+            int current = size.get();
+            if (current >= maxSize) return false;
+            if (size.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    private NodeContext createContext() throws Exception {
+        NodeContext context = null;
+        try {
+            context = factory.get();
+            initializer.initialize(context);
+            return context;
+        } catch (Exception e) {
+            size.decrementAndGet();
+            if (context != null) context.close();
+            throw e;
+        }
+    }
+
+    private void destroy(NodeContext context) {
+        size.decrementAndGet();
+        try {
+            context.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes dead and expired idle contexts and creates new ones until {@link #minSize} is reached.
+     */
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<IdleContext> it = idle.descendingIterator(); // Least recently used first
+            while (it.hasNext()) {
+                IdleContext idleContext = it.next();
+                boolean isDead = !idleContext.context.getProcess().isAlive();
+                boolean isExpired = now - idleContext.since > maxIdleMillis && size.get() > minSize;
+                if ((isDead || isExpired) && idle.removeLastOccurrence(idleContext)) // False if it was acquired in the meantime
+                    destroy(idleContext.context);
+            }
+            while (!closed && size.get() < minSize && reserveSlot()) {
+                NodeContext context = createContext();
+                if (closed) destroy(context);
+                else idle.offerLast(new IdleContext(context, System.currentTimeMillis()));
+            }
+        } catch (Exception e) {
+            e.printStackTrace(); // Retried on the next run
+        }
+    }
+
+    /**
+     * Amount of contexts that are idle, in use or currently being created.
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all idle contexts. Contexts that are currently in use get closed once released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdown();
+        IdleContext idleContext;
+        while ((idleContext = idle.pollFirst()) != null) {
+            destroy(idleContext.context);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Initializer {
+        void initialize(NodeContext context) throws Exception;
+    }
+
+    private static class IdleContext {
+        final NodeContext context;
+        final long since;
+
+        IdleContext(NodeContext context, long since) {
+            this.context = context;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import com.osiris.headlessbrowser.utils.OS;
+import org.jline.utils.OSUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolved and validated Node.js installation, shared by all {@link NodeContext}s that use the same
+ * installation directory and version. <br>
+ * Resolving (installing if needed, checking the executables, building the PATH) happens only once per directory and version,
+ * instead of on every {@link NodeContext} creation. A different {@link com.osiris.headlessbrowser.Versions#NODEJS}
+ * results in a new resolution.
+ */
+public class NodeInstallation {
+    private static final Map<String, NodeInstallation> INSTALLATIONS = new ConcurrentHashMap<>();
+
+    public final File installationDir;
+    public final String version;
+    public final File nodeExe;
+    public final File npmExe;
+    public final File npxExe;
+    /**
+     * Name of the PATH environment variable ("PATH" or "Path" on Windows).
+     */
+    public final String pathVariable;
+    /**
+     * Value of the PATH environment variable, with the directory of the executables prepended.
+     */
+    public final String pathValue;
+
+    private NodeInstallation(File installationDir, String version) throws FileNotFoundException {
+        this.installationDir = installationDir;
+        this.version = version;
+        if (OS.TYPE.equals(OS.Type.WINDOWS)) {
+            nodeExe = new File(installationDir + "/node.exe");
+            npmExe = new File(installationDir + "/npm.cmd");
+            npxExe = new File(installationDir + "/npx.cmd");
+        } else { // Linux, mac and co.
+            nodeExe = new File(installationDir + "/bin/node");
+            npmExe = new File(installationDir + "/bin/npm");
+            npxExe = new File(installationDir + "/bin/npx");
+        }
+        if (!nodeExe.exists())
+            throw new FileNotFoundException(nodeExe.getAbsolutePath());
+        if (!npmExe.exists())
+            throw new FileNotFoundException(npmExe.getAbsolutePath());
+        if (!npxExe.exists())
+            throw new FileNotFoundException(npxExe.getAbsolutePath());
+
+        String pathSeparator = OSUtils.IS_WINDOWS ? ";" : ":";
+        Map<String, String> env = System.getenv();
+        if (env.get("PATH") != null) {
+            pathVariable = "PATH";
+            pathValue = nodeExe.getParent() + pathSeparator + env.get("PATH");
+        } else if (env.get("Path") != null) {
+            pathVariable = "Path";
+            pathValue = nodeExe.getParent() + pathSeparator + env.get("Path");
+        } else {
+            pathVariable = "PATH";
+            pathValue = nodeExe.getParent() + pathSeparator;
+        }
+    }
+
+    /**
+     * Returns the cached installation for this directory and version, or null if it wasn't resolved yet.
+     */
+    public static NodeInstallation get(File installationDir, String version) {
+        return INSTALLATIONS.get(getKey(installationDir, version));
+    }
+
+    /**
+     * Returns the cached installation for this directory and version. <br>
+     * If there is none yet, runs the installer first (which should install Node.js if needed)
+     * and then validates and caches the installation.
+     */
+    public static NodeInstallation resolve(File installationDir, String version, Installer installer) throws Exception {
+        String key = getKey(installationDir, version);
+        NodeInstallation installation = INSTALLATIONS.get(key);
+        if (installation != null) return installation;
+        synchronized (INSTALLATIONS) { // Installing is rare, thus one after another is fine
+            installation = INSTALLATIONS.get(key);
+            if (installation != null) return installation;
+            installer.install();
+            installation = new NodeInstallation(installationDir, version);
+            INSTALLATIONS.put(key, installation);
+            return installation;
+        }
+    }
+
+    /**
+     * Removes all cached installations of this directory, so that they get resolved again on next use.
+     */
+    public static void invalidate(File installationDir) {
+        String prefix = getKey(installationDir, "");
+        INSTALLATIONS.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String getKey(File installationDir, String version) {
+        String path;
+        try {
+            path = installationDir.getCanonicalPath();
+        } catch (IOException e) {
+            path = installationDir.getAbsolutePath();
+        }
+        return path + "|" + version;
+    }
+
+    /**
+     * Sets the PATH environment variable of the provided process, so that it finds the executables of this installation first.
+     */
+    public void updatePath(ProcessBuilder processBuilder) {
+        processBuilder.environment().put(pathVariable, pathValue);
+    }
+
+    public interface Installer {
+        void install() throws Exception;
+    }
+}
@@ -0,0 +1,188 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of what was installed into a Node.js working directory
+ * (npm packages, browser builds etc.), stored as {@link #FILE_NAME} inside it. <br>
+ * Each entry remembers the resolved version and a fingerprint (size and last modified time) of the files
+ * that prove the installation, for example the package.json of an npm package. <br>
+ * If all these files are unchanged, the installation is still satisfied and npm/npx don't need to run again,
+ * also after restarting the JVM. <br>
+ * Multiple processes can share the same working directory: changes are merged into the latest manifest
+ * while holding a lock on {@link #LOCK_FILE_NAME} and changes of other processes are reloaded.
+ */
+public class NodeManifest {
+    public static final String FILE_NAME = "hbrowser-manifest.json";
+    public static final String LOCK_FILE_NAME = FILE_NAME + ".lock";
+    private static final Map<String, NodeManifest> MANIFESTS = new ConcurrentHashMap<>();
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public final File file;
+    public final File lockFile;
+    private Map<String, Entry> entries;
+    /**
+     * Fingerprint of {@link #file} when it was loaded, to detect changes by other processes.
+     */
+    private String loadedFingerprint;
+
+    private NodeManifest(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getParentFile(), LOCK_FILE_NAME);
+        load();
+    }
+
+    private void load() {
+        loadedFingerprint = getFingerprint(file);
+        Map<String, Entry> loaded = null;
+        if (file.exists()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                loaded = gson.fromJson(reader, new TypeToken<LinkedHashMap<String, Entry>>() {
+                }.getType());
+            } catch (Exception e) { // Corrupt, thus start over, worst case things get installed again
+                loaded = null;
+            }
+        }
+        entries = loaded != null ? loaded : new LinkedHashMap<>();
+    }
+
+    /**
+     * Loads the manifest again, if another process changed it.
+     */
+    private void reloadIfChanged() {
+        if (!Objects.equals(loadedFingerprint, getFingerprint(file))) load();
+    }
+
+    /**
+     * Returns the manifest of the provided working directory, which is loaded only once per directory.
+     */
+    public static NodeManifest get(File workingDir) {
+        String path;
+        try {
+            path = workingDir.getCanonicalPath();
+        } catch (IOException e) {
+            path = workingDir.getAbsolutePath();
+        }
+        return MANIFESTS.computeIfAbsent(path, p -> new NodeManifest(new File(p, FILE_NAME)));
+    }
+
+    /**
+     * Returns true if an entry with this key was recorded and all of its files are unchanged since then.
+     */
+    public synchronized boolean isSatisfied(String key) {
+        reloadIfChanged();
+        Entry entry = entries.get(key);
+        if (entry == null) return false;
+        for (Map.Entry<String, String> fingerprint : entry.files.entrySet()) {
+            if (!fingerprint.getValue().equals(getFingerprint(new File(fingerprint.getKey()))))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the recorded entry, or null.
+     */
+    public synchronized Entry getEntry(String key) {
+        reloadIfChanged();
+        return entries.get(key);
+    }
+
+    /**
+     * Records/replaces the entry with this key and saves the manifest.
+     *
+     * @param version the resolved version, can be null.
+     * @param files   the files that prove the installation, which must all exist.
+     */
+    public synchronized void record(String key, String version, List<File> files) throws IOException {
+        Entry entry = new Entry();
+        entry.version = version;
+        for (File f : files) {
+            String fingerprint = getFingerprint(f);
+            if (fingerprint == null) throw new IOException("Cannot record '" + key + "', file does not exist: " + f);
+            entry.files.put(f.getAbsolutePath(), fingerprint);
+        }
+        update(key, entry);
+    }
+
+    /**
+     * Removes the entry with this key and saves the manifest.
+     */
+    public synchronized void remove(String key) throws IOException {
+        reloadIfChanged();
+        if (entries.containsKey(key)) update(key, null);
+    }
+
+    /**
+     * Reads the latest manifest, replaces (or removes if null) only the entry with this key and saves it,
+     * while holding the lock, so that entries recorded by other processes in the meantime are kept.
+     */
+    private void update(String key, Entry entry) throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                load();
+                if (entry != null) entries.put(key, entry);
+                else entries.remove(key);
+                File tmp = new File(file.getPath() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+                try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                    gson.toJson(entries, writer);
+                }
+                // Atomic, so that other processes sharing the working dir never read a partially written manifest
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                loadedFingerprint = getFingerprint(file);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * @return the size and last modified time of the file, or null if it doesn't exist.
+     */
+    private static String getFingerprint(File f) {
+        if (!f.exists()) return null;
+        return f.length() + ":" + f.lastModified();
+    }
+
+    /**
+     * Returns the "version" of the provided package.json, or null if it doesn't exist or has no version.
+     */
+    public static String readPackageVersion(File packageJson) {
+        if (!packageJson.exists()) return null;
+        try (Reader reader = Files.newBufferedReader(packageJson.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject json = gson.fromJson(reader, JsonObject.class);
+            return json != null && json.has("version") ? json.get("version").getAsString() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static class Entry {
+        public String version;
+        /**
+         * Absolute file paths mapped to their fingerprint.
+         */
+        public Map<String, String> files = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,83 @@
+package com.osiris.headlessbrowser.js.contexts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Builds and caches V8 startup snapshots (node --build-snapshot), so that Node.js starts with
+ * the globals of an init script already present, instead of evaluating it on every start. <br>
+ * Snapshots are cached by the hash of the script and the node executable, thus get rebuilt
+ * automatically if one of them changes. <br>
+ * Note that Node.js only supports built-in modules (like fs, path or vm) in snapshot scripts,
+ * npm packages must still be required at runtime.
+ */
+public class NodeSnapshots {
+
+    /**
+     * Returns the snapshot blob for the provided init script, which gets built first if it doesn't exist yet.
+     *
+     * @param nodeExe      the node executable, which must also be used to start from the snapshot.
+     * @param snapshotsDir the directory to cache the snapshots in.
+     * @param initJs       the code whose resulting global state gets stored in the snapshot.
+     */
+    public static File getOrBuild(File nodeExe, File snapshotsDir, String initJs) throws IOException, InterruptedException {
+        File blob = new File(snapshotsDir, getKey(nodeExe, initJs) + ".blob");
+        if (blob.exists()) return blob;
+        snapshotsDir.mkdirs();
+        File entry = File.createTempFile("snapshot-", ".js", snapshotsDir);
+        String entryName = entry.getName();
+        File tmpBlob = new File(snapshotsDir, entryName.substring(0, entryName.length() - ".js".length()) + ".blob");
+        try {
+            Files.write(entry.toPath(), initJs.getBytes(StandardCharsets.UTF_8));
+            Process process = new ProcessBuilder(Arrays.asList(nodeExe.getAbsolutePath(),
+                    "--snapshot-blob", tmpBlob.getAbsolutePath(), "--build-snapshot", entry.getAbsolutePath()))
+                    .directory(snapshotsDir)
+                    .redirectErrorStream(true)
+                    .start();
+            String output = readAll(process.getInputStream());
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || !tmpBlob.exists())
+                throw new IOException("Failed to build snapshot! Node.js finished with exit code '" + exitCode + "', output: " + output);
+            // Atomic, so that contexts started at the same time never read a partially written snapshot
+            Files.move(tmpBlob.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return blob;
+        } finally {
+            entry.delete();
+            tmpBlob.delete();
+        }
+    }
+
+    private static String getKey(File nodeExe, String initJs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((nodeExe.getAbsolutePath() + "|" + nodeExe.length() + "|" + nodeExe.lastModified() + "|")
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(initJs.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.substring(0, 32);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
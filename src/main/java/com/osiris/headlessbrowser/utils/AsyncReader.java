@@ -6,20 +6,57 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
+/**
+ * Reads lines from the provided {@link InputStream} in the background and forwards them to the listeners. <br>
+ * Runs on the provided {@link Executor} or on the shared {@link #defaultExecutor},
+ * instead of starting a new thread per stream. <br>
+ * Note that reading a process pipe blocks, thus each stream that is currently being read still occupies one thread,
+ * the executor only allows reusing threads of finished streams.
+ */
 public class AsyncReader {
+    /**
+     * Used by all readers that were created without an explicit executor. <br>
+     * A shared pool of daemon threads, that reuses the threads of finished streams.
+     * Daemon threads don't keep the JVM running, thus close your NodeContexts (or wait for their process) before exiting.
+     */
+    public static volatile Executor defaultExecutor = newDefaultExecutor();
+
     public final InputStream inputStream;
-    public final Thread thread;
+    public final Executor executor;
+    /**
+     * Completes once the end of the stream was reached.
+     */
+    public final CompletableFuture<Void> finished;
+    /**
+     * The thread that is currently reading the stream, or null if reading didn't start yet or already finished.
+     *
+     * @deprecated the thread belongs to the {@link #executor} and is reused for other tasks, thus it must not be joined or interrupted.
+     * Use {@link #finished} to wait for the end of the stream instead.
+     */
+    @Deprecated
+    public volatile Thread thread;
     public List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
 
     @SafeVarargs
     public AsyncReader(InputStream inputStream, Consumer<String>... listeners) {
+        this(defaultExecutor, inputStream, listeners);
+    }
+
+    @SafeVarargs
+    public AsyncReader(Executor executor, InputStream inputStream, Consumer<String>... listeners) {
         this.inputStream = inputStream;
+        this.executor = executor;
         if (listeners != null && listeners.length != 0) this.listeners.addAll(Arrays.asList(listeners));
         Object o = this;
-        thread = new Thread(() -> {
+        finished = CompletableFuture.runAsync(() -> {
+            thread = Thread.currentThread();
             String line = "";
             try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
                 while ((line = br.readLine()) != null) {
@@ -31,8 +68,22 @@ public class AsyncReader {
             } catch (IOException e) {
                 System.out.println("Error in thread for object '" + o + "' Details:");
                 e.printStackTrace();
+            } finally {
+                thread = null;
             }
+        }, executor);
+    }
+
+    /**
+     * Returns a cached pool of daemon threads. <br>
+     * Not virtual threads, since blocking reads of process pipes pin their carrier thread,
+     * thus many open streams would starve the virtual thread scheduler.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "AsyncReader");
+            t.setDaemon(true);
+            return t;
         });
-        thread.start();
     }
 }
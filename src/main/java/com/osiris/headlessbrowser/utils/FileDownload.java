@@ -0,0 +1,441 @@
+package com.osiris.headlessbrowser.utils;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Downloads a file via multiple parallel HTTP range requests (segments) and verifies its SHA-256 checksum. <br>
+ * Each segment is written to its own part file next to the destination, thus an interrupted download
+ * continues where it stopped on the next run (and on failed requests, see {@link #retries}),
+ * instead of starting from the beginning. <br>
+ * Falls back to a single request if the server doesn't support ranges. <br>
+ * Also supports file: urls, which get copied (and verified) instead. Example:
+ * <pre>
+ *     new FileDownload(url, dest)
+ *         .expectedSha256(FileDownload.fetchChecksums(baseUrl + "SHASUMS256.txt").get(dest.getName()))
+ *         .download();
+ * </pre>
+ */
+public class FileDownload {
+    /**
+     * Shared by all downloads, so that connections get reused.
+     */
+    public static OkHttpClient client = new OkHttpClient();
+
+    public final String url;
+    public final File dest;
+    /**
+     * Default is 4. The max amount of parallel range requests.
+     */
+    public int segments = 4;
+    /**
+     * Default is 1mb. Files smaller than this are not split into more segments.
+     */
+    public long minSegmentSize = 1024 * 1024;
+    /**
+     * Default is 256kb. The size of the read/write buffer of each segment.
+     */
+    public int bufferSize = 256 * 1024;
+    /**
+     * Default is 3. How often a failed segment gets requested again, continuing at its last written byte.
+     */
+    public int retries = 3;
+    /**
+     * Default is null, which means no verification.
+     * Otherwise, the hex encoded SHA-256 checksum the downloaded file must have.
+     */
+    public String expectedSha256 = null;
+    /**
+     * Default is null. Otherwise, gets called with this download at most once per {@link #progressIntervalMs}.
+     */
+    public Consumer<FileDownload> onProgress = null;
+    /**
+     * Default is 1000ms.
+     */
+    public long progressIntervalMs = 1000;
+    /**
+     * Default is {@link AsyncReader#defaultExecutor}. Runs the segments.
+     */
+    public Executor executor = AsyncReader.defaultExecutor;
+
+    /**
+     * Amount of downloaded bytes, including the bytes of previous runs.
+     */
+    public final AtomicLong downloaded = new AtomicLong();
+    /**
+     * The total size in bytes, or -1 if not known yet.
+     */
+    public volatile long total = -1;
+    private final AtomicLong lastProgressMs = new AtomicLong();
+
+    public FileDownload(String url, File dest) {
+        this.url = url;
+        this.dest = dest;
+    }
+
+    /**
+     * Reads the provided SHASUMS256.txt (url or file: url) line by line.
+     *
+     * @return file names mapped to their hex encoded SHA-256 checksum, in the same order as in the file.
+     */
+    public static Map<String, String> fetchChecksums(String shasumsUrl) throws IOException {
+        Map<String, String> checksums = new LinkedHashMap<>();
+        try (InputStream in = openStream(shasumsUrl);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+", 2);
+                if (parts.length == 2)
+                    checksums.put(parts[1].startsWith("*") ? parts[1].substring(1) : parts[1], parts[0].toLowerCase());
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Opens the provided url (or file: url) as a single stream.
+     */
+    public static InputStream openStream(String url) throws IOException {
+        if (url.startsWith("file:")) return new FileInputStream(new File(URI.create(url)));
+        Response response = client.newCall(new Request.Builder().url(url).build()).execute();
+        if (response.code() != 200) {
+            response.close();
+            throw new IOException("Request to '" + url + "' failed! Code: " + response.code() + " Message: " + response.message());
+        }
+        return response.body().byteStream();
+    }
+
+    /**
+     * Opens the provided url (or file: url) as a single stream, that verifies the SHA-256 checksum while being read. <br>
+     * Reading the end of the stream throws an {@link IOException} if the checksum doesn't match,
+     * thus the stream must be read completely.
+     */
+    public static InputStream openVerifiedStream(String url, String expectedSha256) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return new DigestInputStream(openStream(url), digest) {
+            private boolean verified = false;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) verify();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count == -1) verify();
+                return count;
+            }
+
+            private void verify() throws IOException {
+                if (verified) return;
+                verified = true;
+                String actual = toHex(digest.digest());
+                if (!actual.equalsIgnoreCase(expectedSha256))
+                    throw new IOException("Checksum of '" + url + "' is '" + actual + "' but expected '" + expectedSha256 + "'!");
+            }
+        };
+    }
+
+    /**
+     * Downloads the file and blocks until it is completely written to {@link #dest} and verified.
+     *
+     * @throws IOException if the download failed or the checksum doesn't match.
+     */
+    public File download() throws IOException {
+        dest.getAbsoluteFile().getParentFile().mkdirs();
+        if (url.startsWith("file:")) {
+            File source = new File(URI.create(url));
+            if (!source.exists()) throw new FileNotFoundException(source.getAbsolutePath());
+            total = source.length();
+            List<File> parts = new ArrayList<>();
+            parts.add(source);
+            joinAndVerify(parts, false);
+            return dest;
+        }
+
+        List<long[]> ranges = getRanges(probeSize());
+        File info = new File(dest.getPath() + ".parts");
+        String infoContent = url + "\n" + total + "\n" + ranges.size();
+        List<File> parts = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            parts.add(new File(dest.getPath() + ".part" + i));
+        }
+        if (!info.exists() || !new String(Files.readAllBytes(info.toPath()), StandardCharsets.UTF_8).equals(infoContent)) {
+            deleteParts(parts); // From another file or another segmentation
+            Files.write(info.toPath(), infoContent.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            File part = parts.get(i);
+            long[] range = ranges.get(i);
+            downloaded.addAndGet(part.length());
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    downloadSegment(part, range[0], range[1]);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw e;
+        }
+        joinAndVerify(parts, true);
+        info.delete();
+        return dest;
+    }
+
+    /**
+     * @return the total size, or -1 if the server doesn't support range requests.
+     */
+    private long probeSize() throws IOException {
+        Request request = new Request.Builder().url(url).header("Range", "bytes=0-0").build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() == 206) {
+                String contentRange = response.header("Content-Range"); // bytes 0-0/total
+                if (contentRange != null && contentRange.contains("/") && !contentRange.endsWith("*")) {
+                    total = Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+                    return total;
+                }
+            } else if (response.code() == 200) {
+                ResponseBody body = response.body();
+                if (body != null && body.contentLength() >= 0) total = body.contentLength();
+            } else
+                throw new IOException("Download of '" + dest.getName() + "' failed! Code: " + response.code() + " Message: " + response.message() + " Url: " + url);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the inclusive start and end of each segment. A single segment with end -1 if ranges are not supported.
+     */
+    private List<long[]> getRanges(long size) {
+        List<long[]> ranges = new ArrayList<>();
+        if (size <= 0) {
+            ranges.add(new long[]{0, -1});
+            return ranges;
+        }
+        int count = (int) Math.max(1, Math.min(segments, size / minSegmentSize));
+        long segmentSize = size / count;
+        for (int i = 0; i < count; i++) {
+            long start = i * segmentSize;
+            long end = i == count - 1 ? size - 1 : start + segmentSize - 1;
+            ranges.add(new long[]{start, end});
+        }
+        return ranges;
+    }
+
+    private void downloadSegment(File part, long start, long end) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                long written = part.length();
+                if (end != -1 && start + written > end) return; // Already complete
+                Request.Builder request = new Request.Builder().url(url);
+                if (end != -1) request.header("Range", "bytes=" + (start + written) + "-" + end);
+                else if (written > 0) request.header("Range", "bytes=" + written + "-");
+                try (Response response = client.newCall(request.build()).execute()) {
+                    boolean append;
+                    if (response.code() == 206) append = true;
+                    else if (response.code() == 200 && end == -1) {
+                        append = false; // Range ignored, start over
+                        downloaded.addAndGet(-written);
+                    } else
+                        throw new IOException("Download of '" + dest.getName() + "' failed! Code: " + response.code() + " Message: " + response.message() + " Url: " + url);
+                    byte[] buffer = new byte[bufferSize];
+                    try (InputStream in = response.body().byteStream();
+                         OutputStream out = new FileOutputStream(part, append)) {
+                        int count;
+                        while ((count = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, count);
+                            downloaded.addAndGet(count);
+                            updateProgress();
+                        }
+                    }
+                }
+                if (end != -1 && start + part.length() <= end)
+                    throw new IOException("Segment of '" + dest.getName() + "' ended early at byte " + (start + part.length()) + " instead of " + end);
+                return;
+            } catch (IOException e) {
+                if (attempt >= retries) throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the parts one after another into {@link #dest}, while calculating the checksum. <br>
+     * If the parts can be deleted, the first part becomes {@link #dest} (renamed) and only the others get appended to it,
+     * thus a download with a single segment is not copied at all.
+     */
+    private void joinAndVerify(List<File> parts, boolean deleteParts) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[bufferSize];
+        List<File> toAppend = parts;
+        boolean append = false;
+        if (deleteParts) {
+            Files.move(parts.get(0).toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (expectedSha256 != null) update(digest, dest, buffer, null);
+            toAppend = parts.subList(1, parts.size());
+            append = true;
+        }
+        try (OutputStream out = new FileOutputStream(dest, append)) {
+            for (File part : toAppend) {
+                update(digest, part, buffer, out);
+            }
+        }
+        downloaded.set(dest.length());
+        if (onProgress != null) onProgress.accept(this);
+        if (expectedSha256 != null) {
+            String actual = toHex(digest.digest());
+            if (!actual.equalsIgnoreCase(expectedSha256)) {
+                dest.delete();
+                if (deleteParts) deleteParts(parts); // Corrupt, thus don't resume from them
+                throw new IOException("Checksum of '" + dest.getName() + "' is '" + actual + "' but expected '" + expectedSha256 + "'! Url: " + url);
+            }
+        }
+        if (deleteParts) deleteParts(parts);
+    }
+
+    /**
+     * Reads the file into the digest and also writes it to the provided stream, if not null.
+     */
+    private static void update(MessageDigest digest, File file, byte[] buffer, @Nullable OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+                if (out != null) out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private void deleteParts(List<File> parts) {
+        for (File part : parts) {
+            part.delete();
+        }
+    }
+
+    private void updateProgress() {
+        if (onProgress == null) return;
+        long now = System.currentTimeMillis();
+        long last = lastProgressMs.get();
+        if (now - last >= progressIntervalMs && lastProgressMs.compareAndSet(last, now))
+            onProgress.accept(this);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Example: Downloading node.tar.gz... (12mb/30mb)
+     */
+    public String getStatus() {
+        return "Downloading " + dest.getName() + "... (" + downloaded.get() / (1024 * 1024) + "mb/" + (total < 0 ? "?" : total / (1024 * 1024)) + "mb)";
+    }
+
+    /**
+     * For details see {@link #segments}.
+     */
+    public FileDownload segments(int val) {
+        this.segments = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #minSegmentSize}.
+     */
+    public FileDownload minSegmentSize(long val) {
+        this.minSegmentSize = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #bufferSize}.
+     */
+    public FileDownload bufferSize(int val) {
+        this.bufferSize = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #retries}.
+     */
+    public FileDownload retries(int val) {
+        this.retries = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #expectedSha256}.
+     */
+    public FileDownload expectedSha256(String val) {
+        this.expectedSha256 = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #onProgress}.
+     */
+    public FileDownload onProgress(Consumer<FileDownload> val) {
+        this.onProgress = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #executor}.
+     */
+    public FileDownload executor(Executor val) {
+        this.executor = val;
+        return this;
+    }
+}
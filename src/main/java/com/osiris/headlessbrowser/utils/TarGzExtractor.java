@@ -0,0 +1,313 @@
+package com.osiris.headlessbrowser.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts .tar.gz archives (ustar, GNU and pax formats) while reading them from a stream,
+ * for example directly from a download, without an intermediate archive file or an external tar process. <br>
+ * Supports regular files, directories, symbolic and hard links and keeps the executable permissions. <br>
+ * Entries and links that would end up outside of the target directory are rejected with an {@link IOException},
+ * also if they lead outside via a symbolic link. Existing files get replaced without following links. <br>
+ * Symbolic links are created after all other entries (like GNU tar does), thus no entry can be written through them.
+ */
+public class TarGzExtractor {
+    private static final int BLOCK_SIZE = 512;
+
+    /**
+     * Extracts all entries of the provided .tar.gz stream into the target directory. <br>
+     * Doesn't close the stream and stops at the end of the archive, thus the stream may contain more bytes (padding).
+     *
+     * @param stripComponents amount of leading path elements to remove from each entry,
+     *                        for example 1 to extract node-v16.10.0-linux-x64/bin/node to bin/node.
+     */
+    public static void extract(InputStream in, File targetDir, int stripComponents) throws IOException {
+        Path target = targetDir.toPath().toAbsolutePath().normalize();
+        Files.createDirectories(target);
+        Path realTarget = target.toRealPath();
+        Map<Path, String> symlinks = new LinkedHashMap<>();
+        InputStream tar = new GZIPInputStream(in, 64 * 1024);
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] buffer = new byte[64 * 1024];
+        String longName = null, longLinkName = null;
+        while (true) {
+            if (!readFully(tar, header, BLOCK_SIZE)) break;
+            if (header[0] == 0) break; // End of archive marker
+            char type = (char) header[156];
+            long size = parseNumber(header, 124, 12);
+            String name = longName != null ? longName : parseName(header);
+            String linkName = longLinkName != null ? longLinkName : parseString(header, 157, 100);
+
+            if (type == 'L' || type == 'K' || type == 'x') { // Metadata for the next entry
+                String data = new String(readData(tar, size), StandardCharsets.UTF_8);
+                if (type == 'L') longName = trimNull(data);
+                else if (type == 'K') longLinkName = trimNull(data);
+                else {
+                    String path = parsePaxValue(data, "path");
+                    String linkPath = parsePaxValue(data, "linkpath");
+                    if (path != null) longName = path;
+                    if (linkPath != null) longLinkName = linkPath;
+                }
+                continue;
+            }
+            longName = null;
+            longLinkName = null;
+
+            Path dest = resolve(target, name, stripComponents);
+            if (dest == null || type == 'g') { // Stripped away or global pax header
+                skip(tar, size);
+                continue;
+            }
+            switch (type) {
+                case '5':
+                    checkInside(realTarget, dest, name);
+                    Files.createDirectories(dest);
+                    skip(tar, size);
+                    break;
+                case '2':
+                    Path linkTarget = Paths.get(linkName);
+                    if (linkTarget.isAbsolute() || !dest.getParent().resolve(linkTarget).normalize().startsWith(target))
+                        throw new IOException("Symbolic link '" + name + "' to '" + linkName + "' is outside of the target directory!");
+                    symlinks.put(dest, linkName);
+                    skip(tar, size);
+                    break;
+                case '1':
+                    Path existing = resolve(target, linkName, stripComponents);
+                    if (existing == null || !Files.isRegularFile(existing, LinkOption.NOFOLLOW_LINKS))
+                        throw new IOException("Invalid hard link '" + name + "' to '" + linkName + "'.");
+                    checkInside(realTarget, existing, linkName);
+                    checkInside(realTarget, dest.getParent(), name);
+                    Files.createDirectories(dest.getParent());
+                    Files.deleteIfExists(dest); // Doesn't follow links
+                    Files.createLink(dest, existing);
+                    skip(tar, size);
+                    break;
+                case '0':
+                case '\0':
+                case '7':
+                    checkInside(realTarget, dest.getParent(), name);
+                    Files.createDirectories(dest.getParent());
+                    Files.deleteIfExists(dest); // Doesn't follow links
+                    try (OutputStream out = Files.newOutputStream(dest, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS)) {
+                        long left = size;
+                        while (left > 0) {
+                            int count = tar.read(buffer, 0, (int) Math.min(buffer.length, left));
+                            if (count == -1) throw new EOFException("Unexpected end of archive in '" + name + "'.");
+                            out.write(buffer, 0, count);
+                            left -= count;
+                        }
+                    }
+                    skipPadding(tar, size);
+                    setPermissions(dest, (int) parseNumber(header, 100, 8));
+                    break;
+                default: // Devices, fifos etc. are not needed
+                    skip(tar, size);
+            }
+        }
+
+        for (Map.Entry<Path, String> symlink : symlinks.entrySet()) {
+            Path dest = symlink.getKey();
+            checkInside(realTarget, dest.getParent(), dest.toString());
+            Files.createDirectories(dest.getParent());
+            Files.deleteIfExists(dest);
+            Files.createSymbolicLink(dest, Paths.get(symlink.getValue()));
+        }
+        // Checked once all exist, since a link can lead outside through another link
+        for (Map.Entry<Path, String> symlink : symlinks.entrySet()) {
+            Path dest = symlink.getKey();
+            if (!toRealPath(dest.getParent().resolve(symlink.getValue())).startsWith(realTarget)) {
+                for (Path link : symlinks.keySet()) {
+                    Files.deleteIfExists(link);
+                }
+                throw new IOException("Symbolic link '" + dest + "' to '" + symlink.getValue() + "' is outside of the target directory!");
+            }
+        }
+    }
+
+    /**
+     * Throws an exception if the provided path is outside of the target directory,
+     * which is the case if it (or one of its parents) is a symbolic link that leads outside.
+     */
+    private static void checkInside(Path realTarget, Path path, String name) throws IOException {
+        if (!toRealPath(path).startsWith(realTarget))
+            throw new IOException("Entry '" + name + "' is outside of the target directory!");
+    }
+
+    /**
+     * Like {@link Path#toRealPath(LinkOption...)}, but also works if the path doesn't exist (completely),
+     * by resolving its longest existing parent and appending the rest.
+     */
+    private static Path toRealPath(Path path) throws IOException {
+        List<Path> rest = new ArrayList<>();
+        Path existing = path.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            rest.add(0, existing.getFileName());
+            existing = existing.getParent();
+        }
+        if (existing == null) return path.toAbsolutePath().normalize();
+        Path real = existing.toRealPath();
+        for (Path element : rest) {
+            real = real.resolve(element);
+        }
+        return real.normalize();
+    }
+
+    /**
+     * @return the absolute path of the entry inside the target directory, or null if nothing is left after stripping.
+     */
+    private static Path resolve(Path target, String name, int stripComponents) throws IOException {
+        String[] elements = name.replace('\\', '/').split("/");
+        StringBuilder relative = new StringBuilder();
+        int stripped = 0;
+        for (String element : elements) {
+            if (element.isEmpty() || element.equals(".")) continue;
+            if (stripped < stripComponents) {
+                stripped++;
+                continue;
+            }
+            if (relative.length() > 0) relative.append('/');
+            relative.append(element);
+        }
+        if (relative.length() == 0) return null;
+        Path dest = target.resolve(relative.toString()).normalize();
+        if (!dest.startsWith(target))
+            throw new IOException("Entry '" + name + "' is outside of the target directory!");
+        return dest;
+    }
+
+    private static void setPermissions(Path dest, int mode) {
+        try {
+            Set<PosixFilePermission> permissions = new HashSet<>();
+            PosixFilePermission[] all = {PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+                    PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+                    PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ};
+            for (int i = 0; i < all.length; i++) {
+                if ((mode & (1 << i)) != 0) permissions.add(all[i]);
+            }
+            Files.setPosixFilePermissions(dest, permissions);
+        } catch (UnsupportedOperationException | IOException e) { // Windows
+            if ((mode & 0100) != 0) dest.toFile().setExecutable(true);
+        }
+    }
+
+    private static String parseName(byte[] header) {
+        String name = parseString(header, 0, 100);
+        // Only POSIX ustar ("ustar\0") has a prefix, old GNU ("ustar  ") stores other data there
+        if (parseString(header, 257, 6).equals("ustar")) {
+            String prefix = parseString(header, 345, 155);
+            if (!prefix.isEmpty()) name = prefix + "/" + name;
+        }
+        return name;
+    }
+
+    private static String parseString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) end++;
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Octal number, or big-endian binary number if the highest bit is set (GNU extension for large files).
+     */
+    private static long parseNumber(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xff);
+            }
+            return value;
+        }
+        String octal = parseString(header, offset, length).trim();
+        return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+
+    /**
+     * Pax records look like this: "&lt;length&gt; &lt;key&gt;=&lt;value&gt;\n".
+     */
+    private static String parsePaxValue(String data, String key) {
+        int index = 0;
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8); // Length is in bytes
+        while (index < bytes.length) {
+            int space = index;
+            while (space < bytes.length && bytes[space] != ' ') space++;
+            if (space >= bytes.length) break;
+            int length = Integer.parseInt(new String(bytes, index, space - index, StandardCharsets.UTF_8).trim());
+            if (length <= 0) break;
+            String record = new String(bytes, space + 1, index + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith(key + "=")) return record.substring(key.length() + 1);
+            index += length;
+        }
+        return null;
+    }
+
+    private static String trimNull(String s) {
+        int end = s.indexOf('\0');
+        return end == -1 ? s : s.substring(0, end);
+    }
+
+    private static byte[] readData(InputStream in, long size) throws IOException {
+        byte[] data = new byte[(int) size];
+        if (!readFully(in, data, data.length)) throw new EOFException("Unexpected end of archive.");
+        skipPadding(in, size);
+        return data;
+    }
+
+    /**
+     * Skips the data of an entry including its padding.
+     */
+    private static void skip(InputStream in, long size) throws IOException {
+        skipBytes(in, size + padding(size));
+    }
+
+    private static void skipPadding(InputStream in, long size) throws IOException {
+        skipBytes(in, padding(size));
+    }
+
+    private static void skipBytes(InputStream in, long amount) throws IOException {
+        long left = amount;
+        byte[] buffer = new byte[BLOCK_SIZE * 16];
+        while (left > 0) {
+            int count = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (count == -1) throw new EOFException("Unexpected end of archive.");
+            left -= count;
+        }
+    }
+
+    private static long padding(long size) {
+        long remainder = size % BLOCK_SIZE;
+        return remainder == 0 ? 0 : BLOCK_SIZE - remainder;
+    }
+
+    /**
+     * @return false if the stream ended before the first byte.
+     */
+    private static boolean readFully(InputStream in, byte[] bytes, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, read, length - read);
+            if (count == -1) {
+                if (read == 0) return false;
+                throw new EOFException("Unexpected end of archive.");
+            }
+            read += count;
+        }
+        return true;
+    }
+}
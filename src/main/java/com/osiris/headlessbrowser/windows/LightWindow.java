@@ -5,6 +5,7 @@ import com.osiris.headlessbrowser.HBrowser;
 import com.osiris.headlessbrowser.data.chrome.ChromeHeaders;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
 import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import com.osiris.headlessbrowser.js.contexts.NodeContextPool;
 import com.osiris.headlessbrowser.utils.HtmlView;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -31,6 +32,7 @@ public class LightWindow implements HWindow {
     private final File userDataDir;
     private final boolean isDevTools;
     private final File downloadTempDir;
+    private final NodeContextPool nodeContextPool;
     private boolean enableJavaScript;
     private String url;
     private Map<String, String> customHeaders;
@@ -38,12 +40,42 @@ public class LightWindow implements HWindow {
     private String authority;
     private String javaScriptCode;
 
+    /**
+     * Kind of the {@link NodeContextPool}s this window accepts, see {@link #initJsContext(NodeContext)}.
+     */
+    public static String getContextPoolKind() {
+        return "jsdom";
+    }
+
+    /**
+     * Installs jsdom and defines the global constants this window uses in the provided context.
+     */
+    public static void initJsContext(NodeContext jsContext) throws Exception {
+        jsContext.npmInstall("jsdom");
+        jsContext.executeJavaScript("" +
+                "const jsdom = require(\"jsdom\");\n" +
+                "const { JSDOM } = jsdom;\n", 30, false);
+    }
+
     /**
      * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
      * Use the {@link WindowBuilder} instead. The {@link HBrowser} has a shortcut method for creating custom windows: {@link HBrowser#openCustomWindow()}.
      */
     public LightWindow(HBrowser parentBrowser, boolean enableJavaScript, Map<String, String> customHeaders,
                        OutputStream debugOutput, boolean isHeadless, File userDataDir, boolean isDevTools, int jsTimeout, boolean makeUndetectable) {
+        this(parentBrowser, enableJavaScript, customHeaders, debugOutput, isHeadless, userDataDir, isDevTools, jsTimeout, makeUndetectable, null);
+    }
+
+    /**
+     * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
+     * Use the {@link WindowBuilder} instead. The {@link HBrowser} has a shortcut method for creating custom windows: {@link HBrowser#openCustomWindow()}.
+     *
+     * @param nodeContextPool if not null, the {@link NodeContext} gets acquired from this pool
+     *                        (must be of kind {@link #getContextPoolKind()}) and released back into it on {@link #close()}.
+     */
+    public LightWindow(HBrowser parentBrowser, boolean enableJavaScript, Map<String, String> customHeaders,
+                       OutputStream debugOutput, boolean isHeadless, File userDataDir, boolean isDevTools, int jsTimeout, boolean makeUndetectable,
+                       NodeContextPool nodeContextPool) {
         this.parentBrowser = parentBrowser;
         this.enableJavaScript = enableJavaScript;
         this.customHeaders = customHeaders;
@@ -51,12 +83,16 @@ public class LightWindow implements HWindow {
         this.isHeadless = isHeadless;
         this.userDataDir = userDataDir;
         this.isDevTools = isDevTools;
+        this.nodeContextPool = nodeContextPool;
         try {
-            this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
-            jsContext.npmInstall("jsdom");
-            jsContext.executeJavaScript("" +
-                    "const jsdom = require(\"jsdom\");\n" +
-                    "const { JSDOM } = jsdom;\n", 30, false);
+            if (nodeContextPool != null) {
+                if (!nodeContextPool.kind.equals(getContextPoolKind()))
+                    throw new IllegalArgumentException("Expected pool of kind '" + getContextPoolKind() + "' but got '" + nodeContextPool.kind + "'!");
+                this.jsContext = nodeContextPool.acquire();
+            } else {
+                this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
+                initJsContext(jsContext);
+            }
 
 
             // Define global variables/constants
@@ -159,6 +195,10 @@ public class LightWindow implements HWindow {
         return jsContext;
     }
 
+    public NodeContextPool getNodeContextPool() {
+        return nodeContextPool;
+    }
+
     /**
      * Returns the JavaScript code extracted from the pages script elements. <br>
      * If no page has been loaded this will return null. <br>
@@ -183,7 +223,14 @@ public class LightWindow implements HWindow {
     @Override
     public void close() throws RuntimeException {
         try {
-            jsContext.close();
+            if (nodeContextPool != null) {
+                // The pages' DOM must be disposed here (stops its timers and scripts), since the context lives on
+                jsContext.executeJavaScript("if (typeof window !== 'undefined' && window) window.close();\n" +
+                        "var document = null;\n" +
+                        "var window = null;\n");
+                nodeContextPool.release(jsContext);
+            } else
+                jsContext.close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
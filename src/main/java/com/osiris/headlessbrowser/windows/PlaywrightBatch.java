@@ -0,0 +1,261 @@
+package com.osiris.headlessbrowser.windows;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
+import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records a sequence of page actions and result reads, and runs them all at once,
+ * in a single JavaScript execution (one round trip to Node.js instead of one per action). <br>
+ * Example:
+ * <pre>
+ *     PlaywrightBatch.Results results = window.batch()
+ *         .load("example.com")
+ *         .fill("#name", "John")
+ *         .leftClick("#submit")
+ *         .readStatusCode()
+ *         .readOuterHtml()
+ *         .execute();
+ *     int statusCode = results.getInt(0);
+ *     Document html = results.getDocument(1);
+ * </pre>
+ * The results of the read* methods are returned in the same order they were added. <br>
+ * If an action fails, the remaining actions are not executed and a {@link NodeJsCodeException}
+ * containing the failed steps' index is thrown.
+ */
+public class PlaywrightBatch {
+    private static final Gson GSON = new Gson();
+    private final NodeContext jsContext;
+    /**
+     * JavaScript expression of the page to run the actions on.
+     */
+    private final String page;
+    /**
+     * JavaScript expression of the pages' last response.
+     */
+    private final String response;
+    private final StringBuilder jsCode = new StringBuilder();
+    private int steps = 0;
+
+    PlaywrightBatch(NodeContext jsContext, String page) {
+        this.jsContext = jsContext;
+        this.page = page;
+        this.response = "hbPages[" + page + ".hbId].response";
+    }
+
+    /**
+     * Returns the provided string as JavaScript string literal.
+     */
+    private static String str(String s) {
+        return GSON.toJson(s);
+    }
+
+    private PlaywrightBatch addAction(String jsAction) {
+        jsCode.append("  hbStep = ").append(steps++).append(";\n")
+                .append("  ").append(jsAction).append("\n");
+        return this;
+    }
+
+    private PlaywrightBatch addRead(String jsExpression) {
+        return addAction("hbResults.push(" + jsExpression + ");");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#load(String)} for details.
+     */
+    public PlaywrightBatch load(String url) {
+        if (!url.startsWith("http") && !url.startsWith("file:") && !url.equals("about:blank"))
+            url = "https://" + url;
+        return addAction(response + " = await " + page + ".goto(" + str(url) + ", {waitUntil: 'domcontentloaded'});\n" +
+                "  if (page === " + page + ") response = " + response + ";"); // Keep the windows' active response up-to-date
+    }
+
+    /**
+     * See {@link PlaywrightWindow#click(String, String, int, int)} for details.
+     */
+    public PlaywrightBatch click(String selector, String type, int clickCount, int delay) {
+        return addAction("await " + page + ".click(" + str(selector) + ", {button: " + str(type) + ", clickCount: " + clickCount + ", delay: " + delay + "});");
+    }
+
+    public PlaywrightBatch leftClick(String selector) {
+        return click(selector, "left", 1, 0);
+    }
+
+    /**
+     * See {@link PlaywrightWindow#fill(String, String)} for details.
+     */
+    public PlaywrightBatch fill(String selector, String value) {
+        return addAction("await " + page + ".fill(" + str(selector) + ", " + str(value) + ");");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#setChecked(String, boolean)} for details.
+     */
+    public PlaywrightBatch setChecked(String selector, boolean checked) {
+        return addAction("await " + page + ".setChecked(" + str(selector) + ", " + checked + ");");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#selectOption(String, String)} for details.
+     */
+    public PlaywrightBatch selectOption(String selector, String value) {
+        return addAction("await " + page + ".selectOption(" + str(selector) + ", " + str(value) + ");");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#type(String, int)} for details.
+     */
+    public PlaywrightBatch type(String text, int delay) {
+        return addAction("await " + page + ".keyboard.type(" + str(text) + ", {delay: " + delay + "});");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#pressKey(String, int)} for details.
+     */
+    public PlaywrightBatch pressKey(String key, int ms) {
+        return addAction("await " + page + ".keyboard.press(" + str(key) + ", {delay: " + ms + "});");
+    }
+
+    /**
+     * Waits until an element matching the selector is visible.
+     */
+    public PlaywrightBatch waitForSelector(String selector) {
+        return addAction("await " + page + ".waitForSelector(" + str(selector) + ");");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#executeJS(String)} for details.
+     */
+    public PlaywrightBatch executeJS(String jsCode) {
+        return addAction("await " + page + ".evaluate(" + str(jsCode) + ");");
+    }
+
+    /**
+     * Reads the last responses' status code.
+     */
+    public PlaywrightBatch readStatusCode() {
+        return addRead(response + ".status()");
+    }
+
+    public PlaywrightBatch readStatusText() {
+        return addRead(response + ".statusText()");
+    }
+
+    public PlaywrightBatch readUrl() {
+        return addRead(page + ".url()");
+    }
+
+    public PlaywrightBatch readOuterHtml() {
+        return addRead("await " + page + ".evaluate(() => document.getElementsByTagName(\"html\")[0].outerHTML)");
+    }
+
+    /**
+     * Reads the current value of the input, textarea or select element matching the selector.
+     */
+    public PlaywrightBatch readInputValue(String selector) {
+        return addRead("await " + page + ".inputValue(" + str(selector) + ")");
+    }
+
+    /**
+     * Reads the text content of the element matching the selector.
+     */
+    public PlaywrightBatch readTextContent(String selector) {
+        return addRead("await " + page + ".textContent(" + str(selector) + ")");
+    }
+
+    /**
+     * Reads the value returned by the provided code, that gets executed in the pages' context. Example:
+     * <pre>
+     *     return document.title;
+     * </pre>
+     * The value must be serializable to JSON.
+     */
+    public PlaywrightBatch readJSResult(String jsCode) {
+        return addRead("await " + page + ".evaluate(() => {\n" + jsCode + "\n})");
+    }
+
+    /**
+     * Returns the amount of actions (including reads) recorded so far.
+     */
+    public int getStepCount() {
+        return steps;
+    }
+
+    /**
+     * Returns the complete JavaScript code that gets executed by {@link #execute()}.
+     */
+    public String toJavaScript() {
+        return "" +
+                "var result = await (async () => {\n" +
+                "  const hbResults = [];\n" +
+                "  let hbStep = -1;\n" +
+                "  try {\n" +
+                jsCode +
+                "  } catch (e) {\n" +
+                "    if (e instanceof Error) e.message = 'Batch step ' + hbStep + ' failed: ' + e.message;\n" +
+                "    throw e;\n" +
+                "  }\n" +
+                "  return JSON.stringify(hbResults);\n" +
+                "})();\n";
+    }
+
+    /**
+     * Runs all recorded actions in a single JavaScript execution and returns the results of the read* methods.
+     */
+    public Results execute() throws NodeJsCodeException {
+        return NodeContext.waitFor(executeAsync());
+    }
+
+    /**
+     * Same as {@link #execute()} but does not block.
+     */
+    public CompletableFuture<Results> executeAsync() {
+        return jsContext.executeJSAndGetResultAsync(toJavaScript()).thenApply(Results::new);
+    }
+
+    /**
+     * Results of a {@link PlaywrightBatch}, in the order the read* methods were called.
+     */
+    public static class Results {
+        public final JsonArray array;
+
+        public Results(String json) {
+            this.array = GSON.fromJson(json.trim(), JsonArray.class);
+        }
+
+        public int size() {
+            return array.size();
+        }
+
+        public JsonElement get(int index) {
+            return array.get(index);
+        }
+
+        public String getString(int index) {
+            JsonElement el = array.get(index);
+            return el.isJsonNull() ? null : el.getAsString();
+        }
+
+        public int getInt(int index) {
+            return array.get(index).getAsInt();
+        }
+
+        public boolean getBoolean(int index) {
+            return array.get(index).getAsBoolean();
+        }
+
+        public Document getDocument(int index) {
+            return Jsoup.parse(getString(index));
+        }
+
+        public <T> T get(int index, Class<T> type) {
+            return GSON.fromJson(array.get(index), type);
+        }
+    }
+}
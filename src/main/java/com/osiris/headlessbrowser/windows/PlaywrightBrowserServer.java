@@ -0,0 +1,66 @@
+package com.osiris.headlessbrowser.windows;
+
+import com.osiris.headlessbrowser.js.contexts.NodeContext;
+
+import java.io.File;
+import java.io.OutputStream;
+
+/**
+ * One launched Chromium, shared by many {@link PlaywrightWindow}s. <br>
+ * Instead of launching its own browser with a disk-backed profile, each window connects to this browser
+ * and gets a lightweight, isolated browser context (own cookies, storage and cache, nothing written to disk).
+ * Thus creating a window only takes a few milliseconds and uses far less memory. <br>
+ * Create one via {@link WindowBuilder#buildPlaywrightBrowserServer()} and pass it to {@link WindowBuilder#sharedBrowser(PlaywrightBrowserServer)}.
+ * Windows must be closed before this is closed.
+ */
+public class PlaywrightBrowserServer implements AutoCloseable {
+    /**
+     * Runs the browser, gets closed together with it.
+     */
+    public final NodeContext jsContext;
+    /**
+     * The url windows connect to, via chromium.connect(wsEndpoint).
+     */
+    public final String wsEndpoint;
+    public final boolean isHeadless;
+
+    /**
+     * Installs Playwright and Chromium if needed and launches the browser.
+     *
+     * @param parentNodeDir  directory of the Node.js installation, see {@link NodeContext#NodeContext(File, OutputStream, int)}.
+     * @param additionalArgs additional Chromium flags, can be null.
+     */
+    public PlaywrightBrowserServer(File parentNodeDir, OutputStream debugOutput, int jsTimeout, boolean isHeadless, String... additionalArgs) {
+        this.isHeadless = isHeadless;
+        this.jsContext = new NodeContext(parentNodeDir, debugOutput, jsTimeout);
+        try {
+            PlaywrightWindow.initJsContext(jsContext, false, true);
+            StringBuilder args = new StringBuilder("'--disable-blink-features=AutomationControlled'");
+            if (additionalArgs != null)
+                for (String arg : additionalArgs) {
+                    args.append(", ").append(NodeContext.gson.toJson(arg));
+                }
+            this.wsEndpoint = jsContext.executeJSAndGetResult(
+                    "var hbServer = await chromium.launchServer({\n" +
+                            "  headless : " + isHeadless + ",\n" +
+                            "  args: [" + args + "]\n" +
+                            "});\n" +
+                            "var result = hbServer.wsEndpoint();\n", 30, false).trim();
+        } catch (Exception e) {
+            try {
+                jsContext.close();
+            } catch (Exception ignored) {
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            jsContext.executeJavaScript("await hbServer.close();");
+        } finally {
+            jsContext.close();
+        }
+    }
+}
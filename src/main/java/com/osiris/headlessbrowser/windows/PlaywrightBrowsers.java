@@ -0,0 +1,125 @@
+package com.osiris.headlessbrowser.windows;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.osiris.headlessbrowser.Versions;
+import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import com.osiris.headlessbrowser.js.contexts.NodeManifest;
+import com.osiris.headlessbrowser.utils.OS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Installs the browsers used by Playwright, but only the requested ones (for example "chromium"),
+ * instead of all browsers Playwright supports (chromium, firefox and webkit). <br>
+ * Installed browsers are recorded in the {@link NodeManifest}, so that "npx playwright install" only runs if a browser build is missing. <br>
+ * Concurrent installations of the same browser (for example many windows starting at the same time) share one installation.
+ */
+public class PlaywrightBrowsers {
+    /**
+     * The browser {@link PlaywrightWindow}s launch.
+     */
+    public static final String CHROMIUM = "chromium";
+    /**
+     * Installations by browsers dir, Playwright version and browser, that are running or finished.
+     */
+    private static final Map<String, CompletableFuture<Void>> INSTALLATIONS = new ConcurrentHashMap<>();
+
+    /**
+     * Installs the provided browsers of the current {@link Versions#PLAYWRIGHT}, unless they are already installed. <br>
+     * Playwright must be installed already (npm).
+     *
+     * @param browsers names of the browsers, as accepted by "npx playwright install", for example {@link #CHROMIUM}.
+     */
+    public static void install(NodeContext jsContext, String... browsers) throws IOException {
+        for (String browser : browsers) {
+            String key = getBrowsersDir(jsContext).getAbsolutePath() + "|" + Versions.PLAYWRIGHT + "|" + browser;
+            CompletableFuture<Void> installation = new CompletableFuture<>();
+            CompletableFuture<Void> existing = INSTALLATIONS.putIfAbsent(key, installation);
+            if (existing != null) {
+                try {
+                    existing.join(); // Waits if it's still running
+                    continue;
+                } catch (CompletionException e) {
+                    throw new IOException("Failed to install Playwright browser '" + browser + "'!", e.getCause());
+                }
+            }
+            try {
+                installIfNeeded(jsContext, browser);
+                installation.complete(null);
+            } catch (Exception e) {
+                INSTALLATIONS.remove(key, installation); // Allow retrying
+                installation.completeExceptionally(e);
+                if (e instanceof IOException) throw (IOException) e;
+                throw new IOException("Failed to install Playwright browser '" + browser + "'!", e);
+            }
+        }
+    }
+
+    private static void installIfNeeded(NodeContext jsContext, String browser) throws Exception {
+        String key = "npx playwright@" + Versions.PLAYWRIGHT + " install " + browser;
+        if (jsContext.manifest.isSatisfied(key)) return;
+        Process process = jsContext.executeNpxWithArgs("playwright@" + Versions.PLAYWRIGHT, "install", browser);
+        if (process.exitValue() != 0) // Fails the installation, so that the next install() retries it
+            throw new IOException("Failed to install Playwright browser '" + browser + "'! '" + key + "' finished with exit code '" + process.exitValue() + "'.");
+        List<File> markers = getInstallationMarkers(jsContext, browser);
+        if (markers != null) jsContext.manifest.record(key, Versions.PLAYWRIGHT, markers);
+    }
+
+    /**
+     * Returns the browsers.json of Playwright (the browser builds it needs) and the files Playwright creates
+     * once a build of the provided browser was installed completely, or null if it is not installed.
+     */
+    public static List<File> getInstallationMarkers(NodeContext jsContext, String browser) throws IOException {
+        File browsersJson = new File(jsContext.workingDir + "/node_modules/playwright-core/browsers.json");
+        if (!browsersJson.exists()) return null;
+        List<File> markers = new ArrayList<>();
+        markers.add(browsersJson);
+        File browsersDir = getBrowsersDir(jsContext);
+        JsonObject json;
+        try (Reader reader = Files.newBufferedReader(browsersJson.toPath(), StandardCharsets.UTF_8)) {
+            json = NodeContext.gson.fromJson(reader, JsonObject.class);
+        }
+        for (JsonElement e : json.getAsJsonArray("browsers")) {
+            JsonObject build = e.getAsJsonObject();
+            String name = build.get("name").getAsString();
+            // Newer versions install a separate headless shell together with chromium
+            if (!name.equals(browser) && !name.equals(browser + "-headless-shell")) continue;
+            File marker = new File(browsersDir, name.replace('-', '_')
+                    + "-" + build.get("revision").getAsString() + "/INSTALLATION_COMPLETE");
+            if (!marker.exists()) return null;
+            markers.add(marker);
+        }
+        return markers.size() > 1 ? markers : null;
+    }
+
+    /**
+     * Returns the directory Playwright installs its browsers into (PLAYWRIGHT_BROWSERS_PATH or the OS specific default).
+     */
+    public static File getBrowsersDir(NodeContext jsContext) {
+        String path = System.getenv("PLAYWRIGHT_BROWSERS_PATH");
+        if ("0".equals(path))
+            return new File(jsContext.workingDir + "/node_modules/playwright-core/.local-browsers");
+        if (path != null && !path.isEmpty()) return new File(path);
+        String home = System.getProperty("user.home");
+        if (OS.isWindows()) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            return new File((localAppData != null ? localAppData : home + "/AppData/Local") + "/ms-playwright");
+        } else if (OS.TYPE.equals(OS.Type.MAC)) {
+            return new File(home + "/Library/Caches/ms-playwright");
+        } else {
+            String cacheHome = System.getenv("XDG_CACHE_HOME");
+            return new File((cacheHome != null && !cacheHome.isEmpty() ? cacheHome : home + "/.cache") + "/ms-playwright");
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.osiris.headlessbrowser.windows;
+
+import com.google.gson.JsonObject;
+import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
+import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle to a single page/tab of a {@link PlaywrightWindow}. <br>
+ * All pages of a window share the same browser and {@link NodeContext}, but each page
+ * has its own id and its own last response, thus multiple pages can be used independently
+ * (and at the same time via the async methods) without starting additional browsers. <br>
+ * Get one via {@link PlaywrightWindow#newPage()}, {@link PlaywrightWindow#getActivePage()} or {@link PlaywrightWindow#getOpenPages()}.
+ */
+public class PlaywrightPage {
+    public final PlaywrightWindow window;
+    /**
+     * Unique id of this page inside the windows {@link NodeContext}.
+     */
+    public final String id;
+    private final NodeContext jsContext;
+    /**
+     * JavaScript reference to this pages' entry: { page: ..., response: ... }
+     */
+    private final String ref;
+
+    PlaywrightPage(PlaywrightWindow window, String id) {
+        this.window = window;
+        this.id = id;
+        this.jsContext = window.getJsContext();
+        this.ref = "hbPages['" + id + "']";
+    }
+
+    /**
+     * Loads the contents from the provided url into this page. <br>
+     * Method only returns when 'domcontentloaded' event was triggered.
+     */
+    public PlaywrightPage load(String url) throws NodeJsCodeException {
+        jsContext.executeJavaScript(getLoadJs(url));
+        return this;
+    }
+
+    /**
+     * Same as {@link #load(String)} but does not block. <br>
+     * Loading multiple pages at the same time is only truly parallel with {@link NodeContext.Transport#FRAMED}.
+     */
+    public CompletableFuture<PlaywrightPage> loadAsync(String url) {
+        return jsContext.executeJavaScriptAsync(getLoadJs(url)).thenApply(ctx -> this);
+    }
+
+    /**
+     * Loads the contents from the provided file into this page. <br>
+     * Method only returns when 'networkidle' event was triggered.
+     */
+    public PlaywrightPage load(File file) throws NodeJsCodeException {
+        String url = "file:///" + file.getAbsolutePath().replace("\\", "/");
+        jsContext.executeJavaScript("" +
+                ref + ".response = await " + ref + ".page.goto(" + NodeContext.gson.toJson(url) + ", {waitUntil: 'networkidle'});\n" +
+                getSyncResponseJs());
+        return this;
+    }
+
+    private String getLoadJs(String url) {
+        if (!url.startsWith("http") && !url.startsWith("file:") && !url.equals("about:blank"))
+            url = "https://" + url;
+        return "" +
+                ref + ".response = await " + ref + ".page.goto(" + NodeContext.gson.toJson(url) + ", {waitUntil: 'domcontentloaded'});\n" +
+                getSyncResponseJs();
+    }
+
+    /**
+     * Keeps the global response variable up-to-date if this is the windows active page.
+     */
+    private String getSyncResponseJs() {
+        return "if (page === " + ref + ".page) response = " + ref + ".response;\n";
+    }
+
+    /**
+     * Returns the current url of this page.
+     */
+    public String getUrl() {
+        return jsContext.evaluate("var result = " + ref + ".page.url();\n", String.class);
+    }
+
+    public int getStatusCode() {
+        return jsContext.evaluate("var result = " + ref + ".response.status();\n", Integer.class);
+    }
+
+    public String getStatusText() {
+        return jsContext.evaluate("var result = " + ref + ".response.statusText();\n", String.class);
+    }
+
+    /**
+     * See {@link PlaywrightWindow#getResponseHeaders()} for details.
+     */
+    public JsonObject getResponseHeaders() {
+        return jsContext.evaluate("var result = await " + ref + ".response.allHeaders();\n", JsonObject.class);
+    }
+
+    /**
+     * Note that this returns a copy and not the actual file, <br>
+     * which means that changes done to the real html after returning this won't be reflected in the copy. <br>
+     */
+    public Document getOuterHtml() {
+        return Jsoup.parse(jsContext.executeJSAndGetResult(getOuterHtmlJs()));
+    }
+
+    /**
+     * Same as {@link #getOuterHtml()} but does not block.
+     */
+    public CompletableFuture<Document> getOuterHtmlAsync() {
+        return jsContext.executeJSAndGetResultAsync(getOuterHtmlJs()).thenApply(Jsoup::parse);
+    }
+
+    /**
+     * See {@link PlaywrightWindow#getOuterHtmlStreaming()} for details.
+     */
+    public Document getOuterHtmlStreaming() throws NodeJsCodeException, IOException {
+        try (InputStream in = jsContext.executeJSAndGetResultStream(getOuterHtmlJs())) {
+            return Jsoup.parse(in, "UTF-8", "");
+        }
+    }
+
+    private String getOuterHtmlJs() {
+        return "var result = await " + ref + ".page.evaluate(() => document.getElementsByTagName(\"html\")[0].outerHTML);\n";
+    }
+
+    /**
+     * Executes the provided JavaScript code in this pages' context. <br>
+     * See {@link PlaywrightWindow#executeJS(String)} for details.
+     */
+    public PlaywrightPage executeJS(String jsCode) throws NodeJsCodeException {
+        jsContext.executeJavaScript("await " + ref + ".page.evaluate(`\n" +
+                jsCode +
+                "`);\n");
+        return this;
+    }
+
+    /**
+     * See {@link PlaywrightWindow#executeJSAndGetResult(String)} for details.
+     */
+    public String executeJSAndGetResult(String jsCode) {
+        return jsContext.executeJSAndGetResult("var result = await " + ref + ".page.evaluate(() => {\n" +
+                jsCode + "\n" +
+                "});\n");
+    }
+
+    /**
+     * See {@link PlaywrightWindow#click(String, String, int, int)} for details.
+     */
+    public PlaywrightPage click(String selector, String type, int clickCount, int delay) throws NodeJsCodeException {
+        jsContext.callFunction("pwClick", id, selector, type, clickCount, delay);
+        return this;
+    }
+
+    /**
+     * See {@link PlaywrightWindow#fill(String, String)} for details.
+     */
+    public PlaywrightPage fill(String selector, String value) throws NodeJsCodeException {
+        jsContext.callFunction("pwFill", id, selector, value, Collections.emptyMap());
+        return this;
+    }
+
+    /**
+     * Types the provided text with the provided delay in ms between each type.
+     */
+    public PlaywrightPage type(String text, int delay) throws NodeJsCodeException {
+        jsContext.callFunction("pwType", id, text, delay);
+        return this;
+    }
+
+    public PlaywrightPage setScreenSize(int width, int height) throws NodeJsCodeException {
+        jsContext.callFunction("pwSetViewportSize", id, width, height);
+        return this;
+    }
+
+    /**
+     * See {@link PlaywrightWindow#makeScreenshot(File, boolean)} for details.
+     */
+    public PlaywrightPage makeScreenshot(File file, boolean captureFullPage) throws IOException, NodeJsCodeException {
+        if (file.exists()) file.delete();
+        file.createNewFile();
+        String path = file.getAbsolutePath().replace("\\", "/"); // Windows paths don't work that's why we do this
+        jsContext.callFunction("pwScreenshot", id, path, captureFullPage);
+        return this;
+    }
+
+    /**
+     * Returns a new {@link PlaywrightBatch} that runs its actions on this page, all in a single JavaScript execution.
+     */
+    public PlaywrightBatch batch() {
+        return new PlaywrightBatch(jsContext, ref + ".page");
+    }
+
+    /**
+     * Makes this the active page of its window, which means that the methods
+     * of {@link PlaywrightWindow} (like {@link PlaywrightWindow#load(String)}) will affect this page.
+     */
+    public PlaywrightPage activate() throws NodeJsCodeException {
+        window.setActivePage(this);
+        return this;
+    }
+
+    public boolean isActive() {
+        return this.equals(window.getActivePage());
+    }
+
+    /**
+     * Returns true if this page was closed, either via {@link #close()} or by the website/browser.
+     */
+    public boolean isClosed() {
+        return jsContext.evaluate("var result = " + ref + " === undefined;\n", Boolean.class);
+    }
+
+    /**
+     * Closes this page. If this was the active page,
+     * the most recently opened page that is still open becomes the active page.
+     */
+    public void close() throws NodeJsCodeException {
+        String nextId = jsContext.evaluate("" +
+                "var closedPage = " + ref + ".page;\n" +
+                "await closedPage.close();\n" +
+                "delete " + ref + ";\n" +
+                "var ids = Object.keys(hbPages);\n" +
+                "var result = ids.length === 0 ? null : ids[ids.length - 1];\n", String.class);
+        if (isActive())
+            window.setActivePage(nextId == null ? null : new PlaywrightPage(window, nextId));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlaywrightPage)) return false;
+        PlaywrightPage that = (PlaywrightPage) o;
+        return window == that.window && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PlaywrightPage{id=" + id + "}";
+    }
+}
@@ -1,14 +1,15 @@
 package com.osiris.headlessbrowser.windows;
 
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.osiris.headlessbrowser.HBrowser;
 import com.osiris.headlessbrowser.Versions;
+import com.osiris.headlessbrowser.data.BrowserCookie;
 import com.osiris.headlessbrowser.data.chrome.ChromeHeaders;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
 import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import com.osiris.headlessbrowser.js.contexts.NodeContextPool;
 import com.osiris.headlessbrowser.utils.TrashOutput;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -19,7 +20,11 @@ import java.net.MalformedURLException;
 import java.nio.file.FileSystemLoopException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -37,8 +42,119 @@ public class PlaywrightWindow implements HWindow {
     private final boolean isDevTools;
     private final File downloadTempDir;
     private final boolean temporaryUserDataDir;
+    private final NodeContextPool nodeContextPool;
+    private final PlaywrightBrowserServer sharedBrowser;
     private boolean enableJavaScript;
     private String url;
+    private volatile PlaywrightPage activePage;
+
+    /**
+     * Kind of the {@link NodeContextPool}s this window accepts, see {@link #initJsContext(NodeContext, boolean)}.
+     */
+    public static String getContextPoolKind(boolean makeUndetectable) {
+        return makeUndetectable ? "playwright-undetectable" : "playwright";
+    }
+
+    /**
+     * Installs Playwright and Chromium and defines the global variables/constants this window uses in the provided context.
+     */
+    public static void initJsContext(NodeContext jsContext, boolean makeUndetectable) throws Exception {
+        initJsContext(jsContext, makeUndetectable, true);
+    }
+
+    /**
+     * Installs Playwright and defines the global variables/constants this window uses in the provided context.
+     *
+     * @param installChromium false if no browser gets launched, for example when connecting to an existing one,
+     *                        see {@link WindowBuilder#existingChromeBrowserUrl}.
+     */
+    public static void initJsContext(NodeContext jsContext, boolean makeUndetectable, boolean installChromium) throws Exception {
+        jsContext.npmInstall("playwright@"+Versions.PLAYWRIGHT);
+        // User must do this manually since it asks for password even if all packages are up-to-date and existing
+        //jsContext.executeNpxWithArgs("playwright@"+Versions.PLAYWRIGHT, "install-deps");
+        if (installChromium)
+            PlaywrightBrowsers.install(jsContext, PlaywrightBrowsers.CHROMIUM); // Only Chromium gets launched, thus no need for firefox and webkit
+
+        // Define global variables/constants
+        if (makeUndetectable) {
+            jsContext.npmInstall("playwright-extra@"+ Versions.PLAYWRIGHT_EXTRA);
+            jsContext.npmInstall("puppeteer-extra-plugin-stealth@"+ Versions.PUPPETEER_EXTRA_STEALTH_PLUGIN);
+        }
+        jsContext.executeJavaScript(
+                "const { chromium } = require('" + (makeUndetectable ? "playwright-extra" : "playwright") + "');\n" +
+                        (makeUndetectable ? "const stealth = require('puppeteer-extra-plugin-stealth')()\n" +
+                                "chromium.use(stealth);\n" : "") +
+                        "var browserCtx = null;\n" +
+                        "var browser = null;\n" +
+                        "var hbSharedBrowser = null;\n" + // Connection to a PlaywrightBrowserServer, kept while pooled
+                        "var hbSharedEndpoint = null;\n" +
+                        "var page = null;\n" + // The active page
+                        "var response = null;\n" + // The active pages' last response
+                        "var hbPages = {};\n" + // All open pages by id: { page: ..., response: ... }
+                        "var hbLastPageId = 0;\n" +
+                        "function hbAddPage(p) {\n" +
+                        "  if (p.hbId !== undefined) return p.hbId;\n" +
+                        "  p.hbId = '' + (++hbLastPageId);\n" +
+                        "  hbPages[p.hbId] = { page: p, response: null };\n" +
+                        "  p.on('close', () => delete hbPages[p.hbId]);\n" +
+                        "  return p.hbId;\n" +
+                        "}\n" +
+                        "function hbPage(id) {\n" + // The page with the provided id, or the active page if null
+                        "  return id === null ? page : hbPages[id].page;\n" +
+                        "}\n", 30, false);
+        defineFunctions(jsContext);
+    }
+
+    /**
+     * Defines the functions used by the window and page methods, which get called with JSON encoded arguments,
+     * see {@link NodeContext#defineFunction(String, String, String)}. <br>
+     * Their first parameter is always the page id, or null for the active page.
+     */
+    static void defineFunctions(NodeContext jsContext) throws NodeJsCodeException {
+        jsContext.defineFunction("pwClick", "id, selector, button, clickCount, delay",
+                "await hbPage(id).click(selector, {button: button, clickCount: clickCount, delay: delay});");
+        jsContext.defineFunction("pwFill", "id, selector, value, options",
+                "await hbPage(id).fill(selector, value, options);");
+        jsContext.defineFunction("pwSetChecked", "id, selector, checked",
+                "await hbPage(id).setChecked(selector, checked);");
+        jsContext.defineFunction("pwSelectOption", "id, selector, value",
+                "await hbPage(id).selectOption(selector, value);");
+        jsContext.defineFunction("pwType", "id, text, delay",
+                "await hbPage(id).keyboard.type(text, {delay: delay});");
+        jsContext.defineFunction("pwKeyDown", "id, key",
+                "await hbPage(id).keyboard.down(key);");
+        jsContext.defineFunction("pwKeyUp", "id, key",
+                "await hbPage(id).keyboard.up(key);");
+        jsContext.defineFunction("pwKeyPress", "id, key, delay",
+                "await hbPage(id).keyboard.press(key, {delay: delay});");
+        jsContext.defineFunction("pwSetViewportSize", "id, width, height",
+                "await hbPage(id).setViewportSize({width: width, height: height});");
+        jsContext.defineFunction("pwScreenshot", "id, path, fullPage",
+                "await hbPage(id).screenshot({path: path, fullPage: fullPage});");
+        jsContext.defineFunction("pwGoto", "id, url, waitUntil",
+                "const p = hbPage(id);\n" +
+                        "const r = await p.goto(url, waitUntil === null ? {} : {waitUntil: waitUntil});\n" +
+                        "hbPages[p.hbId].response = r;\n" +
+                        "if (p === page) response = r;");
+        jsContext.defineFunction("pwDownload", "id, url",
+                "const p = hbPage(id);\n" +
+                        "await p.goto('about:blank');\n" + // To make sure we got a page where we can actually add the download link and click on it
+                        "const event = p.waitForEvent('download');\n" +
+                        "await p.evaluate(href => {\n" +
+                        "  const a = document.createElement('a');\n" +
+                        "  a.innerHTML = 'Download';\n" +
+                        "  a.setAttribute('href', href);\n" +
+                        "  a.setAttribute('id', 'myCUSTel');\n" +
+                        "  document.getElementsByTagName('body')[0].appendChild(a);\n" +
+                        "}, url);\n" +
+                        "await p.click('id=myCUSTel');\n" +
+                        "const download = await event;\n" +
+                        "const downloadError = await download.failure();\n" +
+                        "if (downloadError != null) throw new Error(downloadError);\n" +
+                        "return [await download.path(), download.suggestedFilename()];");
+        jsContext.defineFunction("pwAddCookies", "cookies",
+                "await browserCtx.addCookies(cookies);");
+    }
 
     /**
      * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
@@ -46,6 +162,32 @@ public class PlaywrightWindow implements HWindow {
      */
     public PlaywrightWindow(HBrowser parentBrowser, boolean enableJavaScript, OutputStream debugOutput, int jsTimeout,
                             boolean isHeadless, File userDataDir, boolean isDevTools, boolean makeUndetectable, boolean temporaryUserDataDir, String existingChromeBrowserUrl) {
+        this(parentBrowser, enableJavaScript, debugOutput, jsTimeout, isHeadless, userDataDir, isDevTools, makeUndetectable,
+                temporaryUserDataDir, existingChromeBrowserUrl, null);
+    }
+
+    /**
+     * See {@link #PlaywrightWindow(HBrowser, boolean, OutputStream, int, boolean, File, boolean, boolean, boolean, String, NodeContextPool, PlaywrightBrowserServer)}.
+     */
+    public PlaywrightWindow(HBrowser parentBrowser, boolean enableJavaScript, OutputStream debugOutput, int jsTimeout,
+                            boolean isHeadless, File userDataDir, boolean isDevTools, boolean makeUndetectable, boolean temporaryUserDataDir, String existingChromeBrowserUrl,
+                            NodeContextPool nodeContextPool) {
+        this(parentBrowser, enableJavaScript, debugOutput, jsTimeout, isHeadless, userDataDir, isDevTools, makeUndetectable,
+                temporaryUserDataDir, existingChromeBrowserUrl, nodeContextPool, null);
+    }
+
+    /**
+     * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
+     * Use the {@link WindowBuilder} instead. The {@link HBrowser} has a shortcut method for creating custom windows: {@link HBrowser#openCustomWindow()}.
+     *
+     * @param nodeContextPool if not null, the {@link NodeContext} gets acquired from this pool
+     *                        (must be of kind {@link #getContextPoolKind(boolean)}) and released back into it on {@link #close()}.
+     * @param sharedBrowser   if not null, this window doesn't launch its own browser, but gets a new isolated browser context
+     *                        in the provided browser, see {@link WindowBuilder#sharedBrowser}.
+     */
+    public PlaywrightWindow(HBrowser parentBrowser, boolean enableJavaScript, OutputStream debugOutput, int jsTimeout,
+                            boolean isHeadless, File userDataDir, boolean isDevTools, boolean makeUndetectable, boolean temporaryUserDataDir, String existingChromeBrowserUrl,
+                            NodeContextPool nodeContextPool, PlaywrightBrowserServer sharedBrowser) {
         this.parentBrowser = parentBrowser;
         if (debugOutput == null)
             debugOutput = new TrashOutput();
@@ -53,33 +195,23 @@ public class PlaywrightWindow implements HWindow {
         this.out = new PrintStream(debugOutput);
         this.isHeadless = isHeadless;
         this.isDevTools = isDevTools;
-        this.temporaryUserDataDir = temporaryUserDataDir;
-        this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
+        this.temporaryUserDataDir = temporaryUserDataDir && sharedBrowser == null; // Shared browser contexts have no profile on disk
+        this.nodeContextPool = nodeContextPool;
+        this.sharedBrowser = sharedBrowser;
         try {
-            jsContext.npmInstall("playwright@"+Versions.PLAYWRIGHT);
-            // User must do this manually since it asks for password even if all packages are up-to-date and existing
-            //jsContext.executeNpxWithArgs("playwright@"+Versions.PLAYWRIGHT, "install-deps");
-            jsContext.executeNpxWithArgs("playwright@"+Versions.PLAYWRIGHT, "install");
-            // TODO this installs all browsers (firefox and webkit), but we only need chrome
-
-            // Define global variables/constants
-            if (makeUndetectable) {
-                jsContext.npmInstall("playwright-extra@"+ Versions.PLAYWRIGHT_EXTRA);
-                jsContext.npmInstall("puppeteer-extra-plugin-stealth@"+ Versions.PUPPETEER_EXTRA_STEALTH_PLUGIN);
+            if (nodeContextPool != null) {
+                if (!nodeContextPool.kind.equals(getContextPoolKind(makeUndetectable)))
+                    throw new IllegalArgumentException("Expected pool of kind '" + getContextPoolKind(makeUndetectable) + "' but got '" + nodeContextPool.kind + "'!");
+                this.jsContext = nodeContextPool.acquire();
+            } else {
+                this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
+                initJsContext(jsContext, makeUndetectable, existingChromeBrowserUrl == null && sharedBrowser == null);
             }
-            jsContext.executeJavaScript(
-                    "const { chromium } = require('" + (makeUndetectable ? "playwright-extra" : "playwright") + "');\n" +
-                            (makeUndetectable ? "const stealth = require('puppeteer-extra-plugin-stealth')()\n" +
-                                    "chromium.use(stealth);\n" : "") +
-                            "var browserCtx = null;\n" +
-                            "var browser = null;\n" +
-                            "var page = null;\n" +
-                            "var response = null;\n", 30, false);
 
             if (userDataDir == null) {
                 userDataDir = new WindowBuilder(null).userDataDir; // Get the default value
             }
-            if (temporaryUserDataDir) {
+            if (this.temporaryUserDataDir) {
                 userDataDir = new File(parentBrowser.getMainDirectory() + "/user-data-" + Integer.toHexString(hashCode()));
             }
             if (userDataDir.isFile())
@@ -91,14 +223,32 @@ public class PlaywrightWindow implements HWindow {
             downloadTempDir = new File(userDataDir + "/downloads-temp");
             if (!downloadTempDir.exists()) downloadTempDir.mkdirs();
 
-            if(existingChromeBrowserUrl != null){
-                jsContext.executeJavaScript(
-                        "browser = await chromium.connectOverCDP('"+existingChromeBrowserUrl+"');\n" +
+            String activePageId;
+            if (sharedBrowser != null) {
+                String endpoint = NodeContext.gson.toJson(sharedBrowser.wsEndpoint);
+                activePageId = jsContext.executeJSAndGetResult(
+                        "if (hbSharedEndpoint !== " + endpoint + " || !hbSharedBrowser.isConnected()) {\n" + // Pooled contexts reuse the connection
+                                "  hbSharedBrowser = await chromium.connect(" + endpoint + ");\n" +
+                                "  hbSharedEndpoint = " + endpoint + ";\n" +
+                                "}\n" +
+                                "browser = hbSharedBrowser;\n" +
+                                "browserCtx = await browser.newContext({\n" +
+                                "  acceptDownloads: true,\n" +
+                                "  javaScriptEnabled: " + enableJavaScript + "\n" +
+                                "});\n" +
+                                "browserCtx.on('page', hbAddPage);\n" +
+                                "page = await browserCtx.newPage();\n" +
+                                "var result = hbAddPage(page);\n", 30, false);
+            } else if(existingChromeBrowserUrl != null){
+                activePageId = jsContext.executeJSAndGetResult(
+                        "browser = await chromium.connectOverCDP(" + NodeContext.gson.toJson(existingChromeBrowserUrl) + ");\n" +
                         "browserCtx = browser.contexts()[0];\n" +
-                        "page = await browserCtx.newPage();\n", 30, false);
+                        "browserCtx.on('page', hbAddPage);\n" +
+                        "page = await browserCtx.newPage();\n" +
+                        "var result = hbAddPage(page);\n", 30, false);
             }else{
-                jsContext.executeJavaScript(
-                        "browserCtx = await chromium.launchPersistentContext('" + userDataDir.getAbsolutePath().replace("\\", "/") + "', {\n" +
+                activePageId = jsContext.executeJSAndGetResult(
+                        "browserCtx = await chromium.launchPersistentContext(" + NodeContext.gson.toJson(userDataDir.getAbsolutePath().replace("\\", "/")) + ", {\n" +
                                 "  acceptDownloads: true,\n" +
                                 "  headless : " + isHeadless + ",\n" +
                                 "  javaScriptEnabled: " + enableJavaScript + ",\n" +
@@ -108,8 +258,11 @@ public class PlaywrightWindow implements HWindow {
                                 "  args: ['--disable-blink-features=AutomationControlled']\n" + // '--enable-automation=false'
                                 "});\n" +
                                 "browser = browserCtx.browser();\n" +
-                                "page = await browserCtx.newPage();\n", 30, false);
+                                "browserCtx.on('page', hbAddPage);\n" + // Also registers popups opened by websites
+                                "page = await browserCtx.newPage();\n" +
+                                "var result = hbAddPage(page);\n", 30, false);
             }
+            this.activePage = new PlaywrightPage(this, activePageId.trim());
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -124,8 +277,7 @@ public class PlaywrightWindow implements HWindow {
         if (!url.startsWith("http") && !url.equals("about:blank"))
             url = "https://" + url;
 
-        jsContext.executeJavaScript("" +
-                "response = await page.goto('" + url + "', wait_until=\"domcontentloaded\");\n");
+        jsContext.callFunction("pwGoto", null, url, "domcontentloaded");
         this.url = url;
         return this;
     }
@@ -136,8 +288,7 @@ public class PlaywrightWindow implements HWindow {
      */
     public PlaywrightWindow load(File file) throws NodeJsCodeException {
         String url = "file:///" + file.getAbsolutePath().replace("\\", "/");
-        jsContext.executeJavaScript("" +
-                "response = await page.goto('" + url + "', wait_until=\"networkidle\");\n");
+        jsContext.callFunction("pwGoto", null, url, "networkidle");
         // 06.02.2024, it seems that domcontentloaded gets not executed for files???,
         // thus we do networkidle instead as the next best thing
         // https://playwright.dev/docs/api/class-page#page-goto
@@ -155,8 +306,7 @@ public class PlaywrightWindow implements HWindow {
         if (!url.startsWith("http") && !url.equals("about:blank"))
             url = "https://" + url;
 
-        jsContext.executeJavaScript("" +
-                "response = await page.goto('" + url + "');\n");
+        jsContext.callFunction("pwGoto", null, url, null);
         this.url = url;
         return this;
     }
@@ -169,8 +319,7 @@ public class PlaywrightWindow implements HWindow {
      */
     public PlaywrightWindow unsafeLoad(File file) throws NodeJsCodeException {
         String url = "file:///" + file.getAbsolutePath().replace("\\", "/");
-        jsContext.executeJavaScript("" +
-                "response = await page.goto('" + url + "');\n");
+        jsContext.callFunction("pwGoto", null, url, null);
         this.url = url;
         return this;
     }
@@ -183,30 +332,76 @@ public class PlaywrightWindow implements HWindow {
     }
 
     /**
-     * Opens a new page/tab and loads the contents from the provided url into it.
+     * Opens a new page/tab, makes it the active page and loads the contents from the provided url into it.
      */
     public PlaywrightWindow newTab(String url) throws NodeJsCodeException {
-        jsContext.executeJavaScript("" +
-                "page = await browserCtx.newPage();\n");
+        setActivePage(newPage());
         load(url);
         return this;
     }
 
     /**
-     * Returns the currently active pages/tabs inside a {@link JsonArray}.
+     * Opens a new 'about:blank' page/tab in the same browser and returns its handle, without changing the active page. <br>
+     * Use this to work with many pages at the same time, instead of opening additional windows.
+     */
+    public PlaywrightPage newPage() throws NodeJsCodeException {
+        String id = jsContext.executeJSAndGetResult("" +
+                "var result = hbAddPage(await browserCtx.newPage());\n");
+        return new PlaywrightPage(this, id.trim());
+    }
+
+    /**
+     * Returns a new {@link PlaywrightBatch} that runs its actions on the active page (see {@link #getActivePage()}),
+     * all in a single JavaScript execution.
+     */
+    public PlaywrightBatch batch() {
+        return new PlaywrightBatch(jsContext, "page");
+    }
+
+    /**
+     * Returns the page the methods of this window operate on, or null if all pages were closed.
+     */
+    public PlaywrightPage getActivePage() {
+        return activePage;
+    }
+
+    /**
+     * Makes the provided page (of this window) the active one, see {@link #getActivePage()}.
+     */
+    public PlaywrightWindow setActivePage(PlaywrightPage page) throws NodeJsCodeException {
+        if (page != null && page.window != this)
+            throw new IllegalArgumentException("Provided page belongs to another window!");
+        if (page == null)
+            jsContext.executeJavaScript("page = null; response = null;\n");
+        else
+            jsContext.executeJavaScript("" +
+                    "page = hbPages['" + page.id + "'].page;\n" +
+                    "response = hbPages['" + page.id + "'].response;\n");
+        this.activePage = page;
+        return this;
+    }
+
+    /**
+     * Returns handles for all currently open pages/tabs of this window, including popups opened by websites.
+     */
+    public List<PlaywrightPage> getOpenPages() {
+        List<PlaywrightPage> list = new ArrayList<>();
+        for (String id : jsContext.evaluate("var result = Object.keys(hbPages);\n", String[].class)) {
+            list.add(new PlaywrightPage(this, id));
+        }
+        return list;
+    }
+
+    /**
+     * Returns the currently open pages/tabs inside a {@link JsonArray}, like this:
+     * <pre>
+     *     [{ id: '1', url: 'https://example.com' }, ...]
+     * </pre>
+     * See {@link #getOpenPages()} to get handles for these pages instead.
      */
     public JsonArray getPages() {
-        return new Gson().fromJson(jsContext.executeJSAndGetResult("" +
-                "var pages = browserCtx.pages();\n" +
-                "var result = '[';\n" +
-                "for (var i = 0; i > pages; i++){" +
-                "var p = pages[i];\n" +
-                "if (i==pages.length-1)" +
-                "  result = result + JSON.stringify(p);\n" +
-                "else" +
-                "  result = result + JSON.stringify(p)+',';\n" +
-                "}\n" +
-                "result = result + ']';\n"), JsonArray.class);
+        return jsContext.evaluate("" +
+                "var result = browserCtx.pages().map(p => ({ id: p.hbId, url: p.url() }));\n", JsonArray.class);
     }
 
     /**
@@ -219,16 +414,13 @@ public class PlaywrightWindow implements HWindow {
      * </pre>
      */
     public JsonObject getResponseHeaders() {
-        String rawJson = jsContext.executeJSAndGetResult("" +
-                "var result = await response.allHeaders();\n" +
-                "result = JSON.stringify(result);\n");
-        return new Gson().fromJson(rawJson, JsonObject.class);
+        return jsContext.evaluate("" +
+                "var result = await response.allHeaders();\n", JsonObject.class);
     }
 
     public int getStatusCode() {
-        String raw = jsContext.executeJSAndGetResult("" +
-                "var result = '' + response.status();\n");
-        return Integer.parseInt(raw);
+        return jsContext.evaluate("" +
+                "var result = response.status();\n", Integer.class);
     }
 
     public String getStatusText() {
@@ -247,10 +439,8 @@ public class PlaywrightWindow implements HWindow {
      * </pre>
      */
     public JsonObject getRequestHeaders() {
-        String rawJson = jsContext.executeJSAndGetResult("" +
-                "var result = await response.request().allHeaders();\n" +
-                "result = JSON.stringify(result);\n");
-        return new Gson().fromJson(rawJson, JsonObject.class);
+        return jsContext.evaluate("" +
+                "var result = await response.request().allHeaders();\n", JsonObject.class);
     }
 
     /**
@@ -282,6 +472,18 @@ public class PlaywrightWindow implements HWindow {
         return Jsoup.parse(rawHtml);
     }
 
+    /**
+     * Same as {@link #getOuterHtml()}, but the html gets parsed while it is being transferred from Node.js,
+     * without holding it as one big string in memory. Recommended for large pages. <br>
+     * See {@link NodeContext#executeJSAndGetResultStream(String)} for details.
+     */
+    public Document getOuterHtmlStreaming() throws NodeJsCodeException, IOException {
+        try (InputStream in = jsContext.executeJSAndGetResultStream("" +
+                "var result = await page.evaluate(() => document.getElementsByTagName(\"html\")[0].outerHTML);\n")) {
+            return Jsoup.parse(in, "UTF-8", url == null ? "" : url);
+        }
+    }
+
     /**
      * Note that this returns a copy and not the actual file, <br>
      * which means that changes done to the real html after returning this won't be reflected in the copy. <br>
@@ -365,41 +567,10 @@ public class PlaywrightWindow implements HWindow {
      * @param url  not null. The download url.
      * @param dest if null file gets downloaded to {@link #downloadTempDir}, otherwise to the provided destination/file.
      */
-    public PlaywrightWindow download(String url, File dest) throws IOException {
-        String[] results = jsContext.parseJSStringArrayToJavaStringArray(
-                jsContext.executeJSAndGetResult("" +
-                        "  await page.goto('about:blank');\n" +
-                        "  var event = page.waitForEvent('download');\n" +
-                        "  await page.evaluate(`var myCUSTel = document.createElement('a');myCUSTel.innerHTML = 'Download';myCUSTel.setAttribute('href', '" + url + "');myCUSTel.setAttribute('id', 'myCUSTel');document.getElementsByTagName('body')[0].appendChild(myCUSTel);`);\n" +
-                        "  await page.click('id=myCUSTel');\n" +
-                        "  var download = await event;\n" +
-                        "  console.log(event);\n" +
-                        "  var downloadError = await download.failure();\n" +
-                        "  if (downloadError != null) throw new Error(downloadError);\n" +
-                        "  var downloadPath = await download.path();\n" +
-                        "  var downloadFileName = await download.suggestedFilename();\n" +
-                        "  var result = downloadPath+','+downloadFileName;\n"));
+    public PlaywrightWindow download(String url, File dest) throws IOException, NodeJsCodeException {
+        String[] results = jsContext.callFunctionAndGetResult(String[].class, "pwDownload", null, url);
         File download = new File(results[0]);
         String fileName = results[1]; // Contains extension
-        /*
-        File download = new File(jsContext.executeJavaScriptAndGetResult("" +
-                "console.log('preparing download'); \n" +
-                "await page.goto('about:blank');\n" + // To make sure we got a page where we can actually add the download link and click on it
-                "await page.evaluate(`" +
-                "var myCUSTel = document.createElement('a');" +
-                "myCUSTel.innerHTML = 'Download';" +
-                "myCUSTel.setAttribute('href', '" + url + "');" +
-                "myCUSTel.setAttribute('id', 'myCUSTel');" +
-                "document.getElementsByTagName('body')[0].appendChild(myCUSTel);`);\n" +
-                "var [ download ] = await Promise.all([\n" +
-                "  page.waitForEvent('download'), // wait for download to start\n" +
-                "  page.click('id=myCUSTel')\n" +
-                "]);\n" +
-                "var downloadError = await download.failure();\n" +
-                "if (downloadError!=null) throw new Error(downloadError);\n" +
-                "var result = await download.path();\n", 0, true).trim());
-
-         */
 
         if (dest != null) {
             if (dest.exists()) dest.delete();
@@ -430,26 +601,24 @@ public class PlaywrightWindow implements HWindow {
      *               the path would be /my/path.  <br><br>
      */
     public PlaywrightWindow setCookie(String name, String value, String url, String domain, String path, boolean isHttpOnly, boolean isSecure) throws MalformedURLException, NodeJsCodeException {
-        StringBuilder jsCode = new StringBuilder("await browserCtx.addCookies([{" +
-                "  name: '" + name + "'," +
-                "  value: '" + value + "',");
         if (url == null && domain == null)
             throw new MalformedURLException("Since the provided url is null, you must provide at least a domain, which is not done!");
-
+        Map<String, Object> cookie = new LinkedHashMap<>();
+        cookie.put("name", name);
+        cookie.put("value", value);
         if (url != null) {
-            jsCode.append("  url: '" + url + "',");
+            cookie.put("url", url);
         } else {
             if (!domain.startsWith("."))
                 domain = "." + domain;
             if (path == null || path.trim().isEmpty())
                 path = "/";
-            jsCode.append("  domain: '" + domain + "',  path: '" + path + "',");
+            cookie.put("domain", domain);
+            cookie.put("path", path);
         }
-
-        jsCode.append("  httpOnly: " + isHttpOnly + "," +
-                "  secure: " + isSecure + "}]);\n");
-
-        jsContext.executeJavaScript(jsCode.toString());
+        cookie.put("httpOnly", isHttpOnly);
+        cookie.put("secure", isSecure);
+        jsContext.callFunction("pwAddCookies", Collections.singletonList(cookie));
         return this;
     }
 
@@ -461,63 +630,12 @@ public class PlaywrightWindow implements HWindow {
      * If no URLs are specified, this method returns cookies for the current page URL. If URLs are specified, only cookies for those URLs are returned.
      */
     public List<HttpCookie> getCookies(String... urls) throws NodeJsCodeException, IOException {
-        String jsCodeForConvertingCookiesToPlainText = "" +
-                "var result = ''\n" +
-                "var cookie = null;\n" +
-                "for (var i = 0; i < cookiesArray.length; i++) {\n" +
-                "    cookie = cookiesArray[i];\n" +
-                "    result = result + cookie.name +'\\n';\n" + // \\n equals \n in jsCode
-                "    result = result + cookie.value +'\\n';\n" +
-                "    result = result + cookie.domain +'\\n';\n" +
-                "    result = result + cookie.path +'\\n';\n" +
-                "    result = result + cookie.expires +'\\n';\n" +
-                "    result = result + cookie.size +'\\n';\n" +
-                "    result = result + cookie.httpOnly +'\\n';\n" +
-                "    result = result + cookie.secure +'\\n';\n" +
-                "    result = result + cookie.session +'\\n';\n" +
-                "    result = result + cookie.sameSite +'\\n';\n" +
-                "}";
-        String rawCookies;
-        if (urls == null || urls.length == 0) {
-            rawCookies = jsContext.executeJSAndGetResult("" +
-                    "var cookiesArray = await browserCtx.cookies();\n" +
-                    jsCodeForConvertingCookiesToPlainText);
-        } else {
-            String urlsString = "";
-            for (int i = 0; i < urls.length; i++) {
-                String url = urls[i];
-                if (i != (urls.length - 1)) {
-                    urlsString = urlsString + url + ", ";
-                } else
-                    urlsString = urlsString + url;
-            }
-            rawCookies = jsContext.executeJSAndGetResult("" +
-                    "var cookiesArray = await browserCtx.cookies(" + urlsString + ");\n" +
-                    jsCodeForConvertingCookiesToPlainText);
-        }
-
-        // Read the cookies in plain text and convert them to actual Java HttpCookie objects:
-        String line;
-        int lineIndex = -1;
-        HttpCookie cookie = null;
+        String urlsArg = (urls == null || urls.length == 0) ? "" : NodeContext.gson.toJson(urls);
+        BrowserCookie[] browserCookies = jsContext.evaluate("" +
+                "var result = await browserCtx.cookies(" + urlsArg + ");\n", BrowserCookie[].class);
         List<HttpCookie> cookies = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new StringReader(rawCookies))) {
-            while ((line = br.readLine()) != null) {
-                lineIndex++;
-                if (lineIndex == 0) cookie = new HttpCookie(line, null);
-                else if (lineIndex == 1) cookie.setValue(line);
-                else if (lineIndex == 2) cookie.setDomain(line);
-                else if (lineIndex == 3) cookie.setPath(line);
-                else if (lineIndex == 4) cookie.setMaxAge((long) (0L + Double.parseDouble(line)));
-                else if (lineIndex == 5) ; // There is no method for setting the 'size' in java
-                else if (lineIndex == 6) cookie.setHttpOnly(Boolean.parseBoolean(line));
-                else if (lineIndex == 7) cookie.setSecure(Boolean.parseBoolean(line));
-                else if (lineIndex == 8) ; // There is no method for setting the 'session' in java
-                else if (lineIndex == 9) { // There is no method for setting the 'sameSite' in java
-                    lineIndex = -1;
-                    cookies.add(cookie);
-                }
-            }
+        for (BrowserCookie browserCookie : browserCookies) {
+            cookies.add(browserCookie.toHttpCookie());
         }
         return cookies;
     }
@@ -553,7 +671,7 @@ public class PlaywrightWindow implements HWindow {
     }
 
     public PlaywrightWindow setScreenSize(int width, int height) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.setViewportSize({ width: " + width + ", height: " + height + " })");
+        jsContext.callFunction("pwSetViewportSize", null, width, height);
         return this;
     }
 
@@ -574,7 +692,7 @@ public class PlaywrightWindow implements HWindow {
         if (file.exists()) file.delete();
         file.createNewFile();
         String path = file.getAbsolutePath().replace("\\", "/"); // Windows paths don't work that's why we do this
-        jsContext.executeJavaScript("await page.screenshot({ path: '" + path + "', fullPage: " + captureFullPage + " });");
+        jsContext.callFunction("pwScreenshot", null, path, captureFullPage);
         return this;
     }
 
@@ -622,8 +740,7 @@ public class PlaywrightWindow implements HWindow {
      * @param delay      the time to wait between mousedown and mouseup in milliseconds.
      */
     public PlaywrightWindow click(String selector, String type, int clickCount, int delay) throws NodeJsCodeException {
-        jsContext.executeJavaScript("" +
-                "await page.click('" + selector + "', {button: '" + type + "', clickCount: " + clickCount + ", delay:" + delay + "});\n");
+        jsContext.callFunction("pwClick", null, selector, type, clickCount, delay);
         return this;
     }
 
@@ -666,8 +783,12 @@ public class PlaywrightWindow implements HWindow {
      */
     public PlaywrightWindow fill(String selector, String value,
                                  boolean force, boolean noWaitAfter, boolean strict, int timeout) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.fill('" + selector + "', '" + value + "', {force: " + force
-                + ",noWaitAfter:" + noWaitAfter + ",strict:" + strict + ",timeout:" + timeout + "});");
+        Map<String, Object> options = new HashMap<>();
+        options.put("force", force);
+        options.put("noWaitAfter", noWaitAfter);
+        options.put("strict", strict);
+        options.put("timeout", timeout);
+        jsContext.callFunction("pwFill", null, selector, value, options);
         return this;
     }
 
@@ -678,7 +799,7 @@ public class PlaywrightWindow implements HWindow {
      * @param checked  Whether to check or uncheck the checkbox.
      */
     public PlaywrightWindow setChecked(String selector, boolean checked) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.setChecked('" + selector + "', " + checked + ");");
+        jsContext.callFunction("pwSetChecked", null, selector, checked);
         return this;
     }
 
@@ -695,7 +816,7 @@ public class PlaywrightWindow implements HWindow {
      *                 Option is considered matching if all specified properties match
      */
     public PlaywrightWindow selectOption(String selector, String value) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.selectOption('" + selector + "', '" + value + "');");
+        jsContext.callFunction("pwSelectOption", null, selector, value);
         return this;
     }
 
@@ -721,7 +842,7 @@ public class PlaywrightWindow implements HWindow {
      * Types the provided text with the provided delay in ms between each type.
      */
     public PlaywrightWindow type(String text, int delay) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.keyboard.type('" + text + "', {delay:" + delay + "});");
+        jsContext.callFunction("pwType", null, text, delay);
         return this;
     }
 
@@ -730,7 +851,7 @@ public class PlaywrightWindow implements HWindow {
      * Full list of key names <a href="https://developer.mozilla.org/en-US/docs/Web/API/KeyboardEvent/key/Key_Values">here</a>.
      */
     public PlaywrightWindow holdKey(String key) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.keyboard.down('" + key + "');");
+        jsContext.callFunction("pwKeyDown", null, key);
         return this;
     }
 
@@ -739,7 +860,7 @@ public class PlaywrightWindow implements HWindow {
      * Full list of key names <a href="https://developer.mozilla.org/en-US/docs/Web/API/KeyboardEvent/key/Key_Values">here</a>.
      */
     public PlaywrightWindow releaseKey(String key) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.keyboard.up('" + key + "');");
+        jsContext.callFunction("pwKeyUp", null, key);
         return this;
     }
 
@@ -749,7 +870,7 @@ public class PlaywrightWindow implements HWindow {
      * Full list of key names <a href="https://developer.mozilla.org/en-US/docs/Web/API/KeyboardEvent/key/Key_Values">here</a>.
      */
     public PlaywrightWindow pressKey(String key, int ms) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.keyboard.press('" + key + "', {delay:" + ms + "});");
+        jsContext.callFunction("pwKeyPress", null, key, ms);
         return this;
     }
 
@@ -757,6 +878,17 @@ public class PlaywrightWindow implements HWindow {
         return jsContext;
     }
 
+    public NodeContextPool getNodeContextPool() {
+        return nodeContextPool;
+    }
+
+    /**
+     * Returns the browser this window shares with other windows, or null if it launched its own browser.
+     */
+    public PlaywrightBrowserServer getSharedBrowser() {
+        return sharedBrowser;
+    }
+
     public OutputStream getDebugOutput() {
         return debugOutput;
     }
@@ -801,7 +933,11 @@ public class PlaywrightWindow implements HWindow {
         out.println("Closing "+this);
         try {
             jsContext.executeJavaScript("await browserCtx.close();");
-            jsContext.close();
+            if (nodeContextPool != null) {
+                jsContext.executeJavaScript("browserCtx = null; browser = null; page = null; response = null; hbPages = {};");
+                nodeContextPool.release(jsContext);
+            } else
+                jsContext.close();
             if (temporaryUserDataDir) {
                 out.println("Deleting: " + userDataDir);
                 forceDeleteDirectory(userDataDir);
@@ -813,7 +949,7 @@ public class PlaywrightWindow implements HWindow {
         out.println("---------------");
     }
 
-    private void forceDeleteDirectory(File file) throws IOException {
+    private void forceDeleteDirectory(File file) throws IOException, InterruptedException {
         if (!file.exists()) {
             out.println("Couldn't find: " + file);
             return;
@@ -836,11 +972,12 @@ public class PlaywrightWindow implements HWindow {
         waitUntilDeleted(file); // Empty dir
     }
 
-    private void waitUntilDeleted(File file) throws FileSystemLoopException {
-        for (int i = 0; i < 100000; i++) {
-            if (file.delete()) return;
+    private void waitUntilDeleted(File file) throws FileSystemLoopException, InterruptedException {
+        for (int i = 0; i < 500; i++) { // Files may still be locked shortly after the browser closed
+            if (file.delete() || !file.exists()) return;
+            Thread.sleep(10);
         }
-        throw new FileSystemLoopException("Failed to delete file after trying 100000 times: " + file);
+        throw new FileSystemLoopException("Failed to delete file after trying for 5 seconds: " + file);
     }
 
 }
@@ -6,9 +6,11 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.osiris.headlessbrowser.HBrowser;
 import com.osiris.headlessbrowser.Versions;
+import com.osiris.headlessbrowser.data.BrowserCookie;
 import com.osiris.headlessbrowser.data.chrome.ChromeHeaders;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
 import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import com.osiris.headlessbrowser.js.contexts.NodeContextPool;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -18,7 +20,9 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -34,16 +38,80 @@ public class PuppeteerWindow implements HWindow {
     final boolean isDevTools;
     final int debuggingPort;
     final String[] additionalStartupArgs;
+    final NodeContextPool nodeContextPool;
     HBrowser parentBrowser;
     boolean enableJavaScript;
     String url;
 
+    /**
+     * Kind of the {@link NodeContextPool}s this window accepts, see {@link #initJsContext(NodeContext, boolean)}.
+     */
+    public static String getContextPoolKind(boolean makeUndetectable) {
+        return makeUndetectable ? "puppeteer-undetectable" : "puppeteer";
+    }
+
+    /**
+     * Installs Puppeteer and defines the global variables/constants this window uses in the provided context.
+     */
+    public static void initJsContext(NodeContext jsContext, boolean makeUndetectable) throws Exception {
+        // Define global variables/constants
+        jsContext.npmInstall("puppeteer@"+ Versions.PUPPETEER);
+        if (makeUndetectable) {
+            jsContext.npmInstall("puppeteer-extra@"+Versions.PUPPETEER_EXTRA);
+            jsContext.npmInstall("puppeteer-extra-plugin-stealth@"+Versions.PUPPETEER_EXTRA_STEALTH_PLUGIN);
+        }
+        jsContext.executeJavaScript(
+                "const puppeteer = require('" + (makeUndetectable ? "puppeteer-extra" : "puppeteer") + "');\n" +
+                        (makeUndetectable ? "const stealth = require('puppeteer-extra-plugin-stealth')()\n" +
+                                "puppeteer.use(stealth);\n" : "") +
+                        "var browser = null;\n" +
+                        "var page = null;\n" +
+                        "var response = null;\n" +
+                        "var downloadFile = null;\n", 30, false);
+        defineFunctions(jsContext);
+    }
+
+    /**
+     * Defines the functions used by the window methods, which get called with JSON encoded arguments,
+     * see {@link NodeContext#defineFunction(String, String, String)}.
+     */
+    static void defineFunctions(NodeContext jsContext) throws NodeJsCodeException {
+        jsContext.defineFunction("ppClick", "selector, button, clickCount, delay",
+                "await page.click(selector, {button: button, clickCount: clickCount, delay: delay});");
+        jsContext.defineFunction("ppScreenshot", "path, fullPage",
+                "await page.screenshot({path: path, fullPage: fullPage});");
+        jsContext.defineFunction("ppSetViewport", "width, height",
+                "await page.setViewport({width: width, height: height});");
+        jsContext.defineFunction("ppGoto", "url",
+                "response = await page.goto(url);");
+        jsContext.defineFunction("ppSetCookie", "cookie",
+                "await page.setCookie(cookie);");
+        jsContext.defineFunction("ppEmulate", "deviceName",
+                "await page.emulate(puppeteer.devices[deviceName]);");
+        jsContext.defineFunction("ppSetJavaScriptEnabled", "enabled",
+                "await page.setJavaScriptEnabled(enabled);");
+    }
+
     /**
      * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
      * Use the {@link WindowBuilder} instead. The {@link HBrowser} has a shortcut method for creating custom windows: {@link HBrowser#openCustomWindow()}.
      */
     public PuppeteerWindow(HBrowser parentBrowser, boolean enableJavaScript, OutputStream debugOutput, int jsTimeout,
                            boolean isHeadless, File userDataDir, boolean isDevTools, int debuggingPort, boolean makeUndetectable, String... additionalStartupArgs) {
+        this(parentBrowser, enableJavaScript, debugOutput, jsTimeout, isHeadless, userDataDir, isDevTools, debuggingPort, makeUndetectable,
+                null, additionalStartupArgs);
+    }
+
+    /**
+     * <p style="color: red;">Note that this is not the recommended way of creating the window object.</p>
+     * Use the {@link WindowBuilder} instead. The {@link HBrowser} has a shortcut method for creating custom windows: {@link HBrowser#openCustomWindow()}.
+     *
+     * @param nodeContextPool if not null, the {@link NodeContext} gets acquired from this pool
+     *                        (must be of kind {@link #getContextPoolKind(boolean)}) and released back into it on {@link #close()}.
+     */
+    public PuppeteerWindow(HBrowser parentBrowser, boolean enableJavaScript, OutputStream debugOutput, int jsTimeout,
+                           boolean isHeadless, File userDataDir, boolean isDevTools, int debuggingPort, boolean makeUndetectable,
+                           NodeContextPool nodeContextPool, String... additionalStartupArgs) {
         this.parentBrowser = parentBrowser;
         this.debugOutput = debugOutput;
         this.isHeadless = isHeadless;
@@ -51,38 +119,16 @@ public class PuppeteerWindow implements HWindow {
         this.isDevTools = isDevTools;
         this.debuggingPort = debuggingPort;
         this.additionalStartupArgs = additionalStartupArgs;
-        this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
+        this.nodeContextPool = nodeContextPool;
         try {
-            // Define global variables/constants
-            if (makeUndetectable) {
-                /* // Doesnt work
-                jsContext.npmInstall("puppeteer");
-                jsContext.npmInstall("puppeteer-extra");
-                jsContext.npmInstall("puppeteer-extra-plugin-stealth");
-                jsContext.executeJavaScript(
-                        "const puppeteer = require('puppeteer-extra');\n" +
-                                "const StealthPlugin = require('puppeteer-extra-plugin-stealth');\n" +
-                                "puppeteer.use(StealthPlugin());\n" +
-                                "var browser = null;\n" +
-                                "var page = null;\n" +
-                                "var downloadFile = null;\n", 30, false);
-                 */
+            if (nodeContextPool != null) {
+                if (!nodeContextPool.kind.equals(getContextPoolKind(makeUndetectable)))
+                    throw new IllegalArgumentException("Expected pool of kind '" + getContextPoolKind(makeUndetectable) + "' but got '" + nodeContextPool.kind + "'!");
+                this.jsContext = nodeContextPool.acquire();
             } else {
-
+                this.jsContext = new NodeContext(new File(userDataDir.getParentFile() + "/node-js"), debugOutput, jsTimeout);
+                initJsContext(jsContext, makeUndetectable);
             }
-            jsContext.npmInstall("puppeteer@"+ Versions.PUPPETEER);
-            if (makeUndetectable) {
-                jsContext.npmInstall("puppeteer-extra@"+Versions.PUPPETEER_EXTRA);
-                jsContext.npmInstall("puppeteer-extra-plugin-stealth@"+Versions.PUPPETEER_EXTRA_STEALTH_PLUGIN);
-            }
-            jsContext.executeJavaScript(
-                    "const puppeteer = require('" + (makeUndetectable ? "puppeteer-extra" : "puppeteer") + "');\n" +
-                            (makeUndetectable ? "const stealth = require('puppeteer-extra-plugin-stealth')()\n" +
-                                    "puppeteer.use(stealth);\n" : "") +
-                            "var browser = null;\n" +
-                            "var page = null;\n" +
-                            "var downloadFile = null;\n", 30, false);
-
 
             StringBuilder jsInitCode = new StringBuilder();
             jsInitCode.append("var defaultArgs = {\n");
@@ -123,7 +169,13 @@ public class PuppeteerWindow implements HWindow {
         // Running js: browser.close() here causes a weird exception: https://github.com/isaacs/rimraf/issues/221
         // Since it's not mandatory we just don't do it.
         try {
-            jsContext.close();
+            if (nodeContextPool != null) {
+                // The browser must be closed here, since the context lives on
+                jsContext.executeJavaScript("await browser.close();\n" +
+                        "browser = null; page = null; response = null; downloadFile = null;\n");
+                nodeContextPool.release(jsContext);
+            } else
+                jsContext.close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -140,8 +192,7 @@ public class PuppeteerWindow implements HWindow {
         if (!url.startsWith("http"))
             url = "https://" + url;
 
-        jsContext.executeJavaScript("" +
-                "var response = await page.goto('" + url + "');\n");
+        jsContext.callFunction("ppGoto", url);
         this.url = url;
         return this;
     }
@@ -205,7 +256,7 @@ public class PuppeteerWindow implements HWindow {
         if (file.exists()) file.delete();
         file.createNewFile();
         String path = file.getAbsolutePath().replace("\\", "/"); // Windows paths don't work that's why we do this
-        jsContext.executeJavaScript("await page.screenshot({ path: '" + path + "', fullPage: " + captureFullPage + " });");
+        jsContext.callFunction("ppScreenshot", path, captureFullPage);
         return this;
     }
 
@@ -214,7 +265,7 @@ public class PuppeteerWindow implements HWindow {
     }
 
     public PuppeteerWindow setScreenSize(int width, int height) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.setViewport({ width: " + width + ", height: " + height + " })");
+        jsContext.callFunction("ppSetViewport", width, height);
         return this;
     }
 
@@ -240,17 +291,15 @@ public class PuppeteerWindow implements HWindow {
             domain = urlOrDomain;
             url = new URL("https//" + domain + "/");
         }
-        jsContext.executeJavaScript("" +
-                "var cookie = {\n" +
-                "  name: '" + name + "',\n" +
-                "  value: '" + value + "',\n" +
-                "  domain: '" + domain + "',\n" +
-                "  url: '" + url + "',\n" +
-                "  path: '" + url.getPath() + "',\n" +
-                "  httpOnly: " + isHttpOnly + ",\n" +
-                "  secure: " + isSecure + "\n" +
-                "}" +
-                "await page.setCookie(cookie)");
+        Map<String, Object> cookie = new HashMap<>();
+        cookie.put("name", name);
+        cookie.put("value", value);
+        cookie.put("domain", domain);
+        cookie.put("url", url.toString());
+        cookie.put("path", url.getPath());
+        cookie.put("httpOnly", isHttpOnly);
+        cookie.put("secure", isSecure);
+        jsContext.callFunction("ppSetCookie", cookie);
         return this;
     }
 
@@ -262,63 +311,12 @@ public class PuppeteerWindow implements HWindow {
      * If no URLs are specified, this method returns cookies for the current page URL. If URLs are specified, only cookies for those URLs are returned.
      */
     public List<HttpCookie> getCookies(String... urls) throws NodeJsCodeException, IOException {
-        String jsCodeForConvertingCookiesToPlainText = "" +
-                "var result = ''\n" +
-                "var cookie = null;\n" +
-                "for (var i = 0; i < cookiesArray.length; i++) {\n" +
-                "    cookie = cookiesArray[i];\n" +
-                "    result = result + cookie.name +'\\n';\n" + // \\n equals \n in jsCode
-                "    result = result + cookie.value +'\\n';\n" +
-                "    result = result + cookie.domain +'\\n';\n" +
-                "    result = result + cookie.path +'\\n';\n" +
-                "    result = result + cookie.expires +'\\n';\n" +
-                "    result = result + cookie.size +'\\n';\n" +
-                "    result = result + cookie.httpOnly +'\\n';\n" +
-                "    result = result + cookie.secure +'\\n';\n" +
-                "    result = result + cookie.session +'\\n';\n" +
-                "    result = result + cookie.sameSite +'\\n';\n" +
-                "}";
-        String rawCookies;
-        if (urls == null || urls.length == 0) {
-            rawCookies = jsContext.executeJSAndGetResult("" +
-                    "var cookiesArray = await page.cookies();\n" +
-                    jsCodeForConvertingCookiesToPlainText);
-        } else {
-            String urlsString = "";
-            for (int i = 0; i < urls.length; i++) {
-                String url = urls[i];
-                if (i != (urls.length - 1)) {
-                    urlsString = urlsString + url + ", ";
-                } else
-                    urlsString = urlsString + url;
-            }
-            rawCookies = jsContext.executeJSAndGetResult("" +
-                    "var cookiesArray = await page.cookies(" + urlsString + ");\n" +
-                    jsCodeForConvertingCookiesToPlainText);
-        }
-
-        // Read the cookies in plain text and convert them to actual Java HttpCookie objects:
-        String line;
-        int lineIndex = -1;
-        HttpCookie cookie = null;
+        String urlsArg = (urls == null || urls.length == 0) ? "" : "..." + NodeContext.gson.toJson(urls);
+        BrowserCookie[] browserCookies = jsContext.evaluate("" +
+                "var result = await page.cookies(" + urlsArg + ");\n", BrowserCookie[].class);
         List<HttpCookie> cookies = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new StringReader(rawCookies))) {
-            while ((line = br.readLine()) != null) {
-                lineIndex++;
-                if (lineIndex == 0) cookie = new HttpCookie(line, null);
-                else if (lineIndex == 1) cookie.setValue(line);
-                else if (lineIndex == 2) cookie.setDomain(line);
-                else if (lineIndex == 3) cookie.setPath(line);
-                else if (lineIndex == 4) cookie.setMaxAge((long) (0L + Double.parseDouble(line)));
-                else if (lineIndex == 5) ; // There is no method for setting the 'size' in java
-                else if (lineIndex == 6) cookie.setHttpOnly(Boolean.parseBoolean(line));
-                else if (lineIndex == 7) cookie.setSecure(Boolean.parseBoolean(line));
-                else if (lineIndex == 8) ; // There is no method for setting the 'session' in java
-                else if (lineIndex == 9) { // There is no method for setting the 'sameSite' in java
-                    lineIndex = -1;
-                    cookies.add(cookie);
-                }
-            }
+        for (BrowserCookie browserCookie : browserCookies) {
+            cookies.add(browserCookie.toHttpCookie());
         }
         return cookies;
     }
@@ -354,8 +352,7 @@ public class PuppeteerWindow implements HWindow {
      * https://github.com/puppeteer/puppeteer/blob/main/src/common/DeviceDescriptors.ts
      */
     public PuppeteerWindow setDevice(String deviceName) throws NodeJsCodeException {
-        jsContext.executeJavaScript("var device = puppeteer.devices['" + deviceName + "'];\n" +
-                "await page.emulate(device);\n");
+        jsContext.callFunction("ppEmulate", deviceName);
         return this;
     }
 
@@ -403,18 +400,13 @@ public class PuppeteerWindow implements HWindow {
      * @param delay      the time to wait between mousedown and mouseup in milliseconds.
      */
     public PuppeteerWindow click(String selector, String type, int clickCount, int delay) throws NodeJsCodeException {
-        jsContext.executeJavaScript("var options = {\n" +
-                "button: '" + type + "',\n" +
-                "clickCount: " + clickCount + ",\n" +
-                "delay: " + delay + "\n" +
-                "}\n" +
-                "await page.click(" + selector + ", options);\n");
+        jsContext.callFunction("ppClick", selector, type, clickCount, delay);
         return this;
     }
 
     public int getStatusCode() throws NodeJsCodeException {
-        return Integer.parseInt(jsContext.executeJSAndGetResult("" +
-                "var result = await currentPageResponse.headers().status;\n"));
+        return jsContext.evaluate("" +
+                "var result = await currentPageResponse.headers().status;\n", Integer.class);
     }
 
     /* TODO https://github.com/puppeteer/puppeteer/issues/7618
@@ -438,7 +430,7 @@ public class PuppeteerWindow implements HWindow {
     }
 
     public PuppeteerWindow setEnableJavaScript(boolean enableJavaScript) throws NodeJsCodeException {
-        jsContext.executeJavaScript("await page.setJavaScriptEnabled(" + enableJavaScript + ");");
+        jsContext.callFunction("ppSetJavaScriptEnabled", enableJavaScript);
         this.enableJavaScript = enableJavaScript;
         return this;
     }
@@ -447,6 +439,10 @@ public class PuppeteerWindow implements HWindow {
         return jsContext;
     }
 
+    public NodeContextPool getNodeContextPool() {
+        return nodeContextPool;
+    }
+
     public OutputStream getDebugOutput() {
         return debugOutput;
     }
@@ -2,10 +2,13 @@ package com.osiris.headlessbrowser.windows;
 
 import com.osiris.headlessbrowser.HBrowser;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
+import com.osiris.headlessbrowser.js.contexts.NodeContext;
+import com.osiris.headlessbrowser.js.contexts.NodeContextPool;
 
 import java.io.File;
 import java.io.OutputStream;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class WindowBuilder {
     /**
@@ -73,6 +76,20 @@ public class WindowBuilder {
      * const browser = await chromium.connectOverCDP('http://localhost:9222');
      */
     public String existingChromeBrowserUrl = null;
+    /**
+     * Default is null. Otherwise the windows {@link NodeContext} is taken from this pool (instead of starting and initialising a new one)
+     * and returned to it once the window gets closed. <br>
+     * Create one via {@link #buildPlaywrightContextPool(int, int)}, {@link #buildPuppeteerContextPool(int, int)} or {@link #buildLightContextPool(int, int)}.
+     * Note that {@link #debugOutputStream} and {@link #jsTimeout} of the pool are used in that case.
+     */
+    public NodeContextPool nodeContextPool = null;
+    /**
+     * Default is null. Otherwise the {@link PlaywrightWindow} doesn't launch its own browser, but gets a new isolated browser context
+     * (own cookies and storage, nothing written to disk) inside this already running browser, which takes only a few milliseconds. <br>
+     * {@link #userDataDir} is then only used for downloads, {@link #temporaryUserDataDir} and {@link #isHeadless} have no effect. <br>
+     * Create one via {@link #buildPlaywrightBrowserServer()}. CURRENTLY ONLY SUPPORTED BY PLAYWRIGHT!
+     */
+    public PlaywrightBrowserServer sharedBrowser = null;
 
     public WindowBuilder(HBrowser parentBrowser) {
         this.parentBrowser = parentBrowser;
@@ -81,18 +98,81 @@ public class WindowBuilder {
 
     public PuppeteerWindow buildPuppeteerWindow() {
         return new PuppeteerWindow(this.parentBrowser, this.enableJavaScript, this.debugOutputStream, this.jsTimeout,
-                this.isHeadless, this.userDataDir, this.isDevTools, this.debuggingPort, this.makeUndetectable, this.additionalStartupArgs);
+                this.isHeadless, this.userDataDir, this.isDevTools, this.debuggingPort, this.makeUndetectable, this.nodeContextPool, this.additionalStartupArgs);
     }
 
     public PlaywrightWindow buildPlaywrightWindow() {
         return new PlaywrightWindow(this.parentBrowser, this.enableJavaScript, this.debugOutputStream, this.jsTimeout,
                 this.isHeadless, this.userDataDir, this.isDevTools, this.makeUndetectable, this.temporaryUserDataDir,
-                this.existingChromeBrowserUrl);
+                this.existingChromeBrowserUrl, this.nodeContextPool, this.sharedBrowser);
     }
 
     public LightWindow buildLightWindow() {
         return new LightWindow(this.parentBrowser, this.enableJavaScript, this.customHeaders, this.debugOutputStream,
-                this.isHeadless, this.userDataDir, this.isDevTools, this.jsTimeout, this.makeUndetectable);
+                this.isHeadless, this.userDataDir, this.isDevTools, this.jsTimeout, this.makeUndetectable, this.nodeContextPool);
+    }
+
+    /**
+     * Creates a pool of Node.js contexts for {@link PlaywrightWindow}s, based on the current settings
+     * of this builder ({@link #makeUndetectable}, {@link #debugOutputStream}, {@link #jsTimeout}, {@link #userDataDir},
+     * {@link #existingChromeBrowserUrl}, {@link #sharedBrowser}). <br>
+     * Pass it to {@link #nodeContextPool(NodeContextPool)} to skip the Playwright installation and startup for new windows.
+     */
+    public NodeContextPool buildPlaywrightContextPool(int minSize, int maxSize) {
+        final boolean makeUndetectable = this.makeUndetectable;
+        final boolean installChromium = this.existingChromeBrowserUrl == null && this.sharedBrowser == null;
+        return new NodeContextPool(PlaywrightWindow.getContextPoolKind(makeUndetectable), newNodeContextFactory(),
+                ctx -> PlaywrightWindow.initJsContext(ctx, makeUndetectable, installChromium), minSize, maxSize);
+    }
+
+    /**
+     * Same as {@link #buildPlaywrightContextPool(int, int)}, but for {@link PuppeteerWindow}s.
+     */
+    public NodeContextPool buildPuppeteerContextPool(int minSize, int maxSize) {
+        final boolean makeUndetectable = this.makeUndetectable;
+        return new NodeContextPool(PuppeteerWindow.getContextPoolKind(makeUndetectable), newNodeContextFactory(),
+                ctx -> PuppeteerWindow.initJsContext(ctx, makeUndetectable), minSize, maxSize);
+    }
+
+    /**
+     * Same as {@link #buildPlaywrightContextPool(int, int)}, but for {@link LightWindow}s.
+     */
+    public NodeContextPool buildLightContextPool(int minSize, int maxSize) {
+        return new NodeContextPool(LightWindow.getContextPoolKind(), newNodeContextFactory(),
+                LightWindow::initJsContext, minSize, maxSize);
+    }
+
+    /**
+     * Launches a browser for {@link #sharedBrowser}, based on the current settings of this builder
+     * ({@link #isHeadless}, {@link #additionalStartupArgs}, {@link #debugOutputStream}, {@link #jsTimeout}, {@link #userDataDir}). <br>
+     * Use it together with {@link #buildPlaywrightContextPool(int, int)} to create windows in milliseconds.
+     */
+    public PlaywrightBrowserServer buildPlaywrightBrowserServer() {
+        return new PlaywrightBrowserServer(new File(userDataDir.getParentFile() + "/node-js"), debugOutputStream, jsTimeout,
+                isHeadless, additionalStartupArgs);
+    }
+
+    private Supplier<NodeContext> newNodeContextFactory() {
+        final File nodeDir = new File(userDataDir.getParentFile() + "/node-js");
+        final OutputStream debugOutputStream = this.debugOutputStream;
+        final int jsTimeout = this.jsTimeout;
+        return () -> new NodeContext(nodeDir, debugOutputStream, jsTimeout);
+    }
+
+    /**
+     * For details see {@link #nodeContextPool}.
+     */
+    public WindowBuilder nodeContextPool(NodeContextPool val) {
+        this.nodeContextPool = val;
+        return this;
+    }
+
+    /**
+     * For details see {@link #sharedBrowser}.
+     */
+    public WindowBuilder sharedBrowser(PlaywrightBrowserServer val) {
+        this.sharedBrowser = val;
+        return this;
     }
 
     /**
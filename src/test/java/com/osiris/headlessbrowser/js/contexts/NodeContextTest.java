@@ -1,13 +1,26 @@
 package com.osiris.headlessbrowser.js.contexts;
 
+import com.google.gson.JsonObject;
 import com.osiris.headlessbrowser.Versions;
+import com.osiris.headlessbrowser.data.NodeMemoryUsage;
+import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
 import com.osiris.headlessbrowser.utils.OS;
 import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +33,353 @@ class NodeContextTest {
         ctx.npmInstall("test");
     }
 
+    @Test
+    void testFramedTransport() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContext ctx = new NodeContext(parent, System.out, 30, NodeContext.Transport.FRAMED)) {
+            ctx.executeJavaScript("var myVar = 'hello';", 30, false);
+            assertEquals("hello 1", ctx.executeJSAndGetResult("var result = myVar + ' ' + (await Promise.resolve(1));"));
+            assertThrows(NodeJsCodeException.class, () -> ctx.executeJavaScript("throw new Error('expected');"));
+        }
+    }
+
+    @Test
+    void testAsyncExecution() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                CompletableFuture<String> slow = ctx.executeJSAndGetResultAsync("await sleep(1000); var result = 'slow';");
+                CompletableFuture<String> fast = ctx.executeJSAndGetResultAsync("var result = 'fast';");
+                assertEquals("fast", fast.get());
+                assertFalse(slow.isDone()); // Completes out of order
+                assertEquals("slow", slow.get());
+            }
+        }
+    }
+
+    @Test
+    void testInterleavedAwaits() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                // Both set "result" before the other one finished
+                CompletableFuture<String> first = ctx.executeJSAndGetResultAsync("var result = 'first'; await sleep(300);");
+                CompletableFuture<String> second = ctx.executeJSAndGetResultAsync("var result = 'second'; await sleep(100);");
+                assertEquals("second", second.get());
+                assertEquals("first", first.get());
+
+                // Errors thrown after an await fail only the request that threw them
+                CompletableFuture<NodeContext> succeeding = ctx.executeJavaScriptAsync("await sleep(300);", 30, false);
+                CompletableFuture<NodeContext> failing = ctx.executeJavaScriptAsync("await sleep(100); throw new Error('expected');", 30, false);
+                ExecutionException e = assertThrows(ExecutionException.class, failing::get);
+                assertTrue(e.getCause() instanceof NodeJsCodeException);
+                assertSame(ctx, succeeding.get());
+                if (transport == NodeContext.Transport.REPL) { // Also errors printed via console.error
+                    succeeding = ctx.executeJavaScriptAsync("await sleep(300);");
+                    failing = ctx.executeJavaScriptAsync("await sleep(100); console.error('expected');");
+                    assertThrows(ExecutionException.class, failing::get);
+                    assertSame(ctx, succeeding.get());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testUnwrappedErrors() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                for (String js : Arrays.asList("throw new Error('expected');", "await sleep(10); throw new Error('expected');")) {
+                    NodeJsCodeException e = assertThrows(NodeJsCodeException.class, () -> ctx.executeJavaScript(js, 0, false));
+                    assertTrue(e.getMessage().startsWith("Error during JavaScript code execution!"), e.getMessage()); // Not a timeout
+                }
+                ctx.executeJavaScript("const unwrapped = 'yes';", 30, false);
+                assertEquals("yes", ctx.executeJSAndGetResult("var result = unwrapped;"));
+            }
+        }
+    }
+
+    @Test
+    void testEvaluate() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                assertArrayEquals(new String[]{"a,b", "c\nd"}, ctx.evaluate("var result = ['a,b', 'c\\nd'];", String[].class));
+                assertEquals(42, ctx.evaluate("var result = 40 + 2;", Integer.class));
+                assertNull(ctx.evaluate("var result = undefined;", String.class));
+                assertEquals("x", ctx.evaluate("var result = { s: 'x' };", JsonObject.class).get("s").getAsString());
+                assertEquals(3, ctx.evaluateAsync("var result = 1 + 2;", Integer.class).get());
+            }
+        }
+    }
+
+    @Test
+    void testFunctions() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                ctx.defineFunction("concat", "a, b", "await sleep(1); return a + b;");
+                ctx.defineFunction("concat", "a, b", "return 'redefined';"); // Ignored
+                assertTrue(ctx.isFunctionDefined("concat"));
+                assertEquals("it's \"quoted\"", ctx.callFunctionAndGetResult(String.class, "concat", "it's ", "\"quoted\""));
+                assertEquals(3, (int) ctx.callFunctionAsync(Integer.class, "concat", 1, 2).get());
+                ctx.defineFunction("fail", "", "throw new Error('expected');");
+                assertThrows(NodeJsCodeException.class, () -> ctx.callFunction("fail"));
+                assertThrows(NodeJsCodeException.class, () -> ctx.callFunction("undefinedFunction"));
+            }
+        }
+    }
+
+    @Test
+    void testResultStream() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, System.out, 30, transport)) {
+                long count = 0;
+                try (Reader reader = ctx.executeJSAndGetResultReader("var result = 'äb'.repeat(1000000) + '!';")) {
+                    int c, last = -1;
+                    while ((c = reader.read()) != -1) {
+                        count++;
+                        last = c;
+                    }
+                    assertEquals('!', last);
+                }
+                assertEquals(2000001, count);
+                try (Reader reader = ctx.executeJSAndGetResultReader("var result = 'a' + '\\uD83D\\uDE00'.repeat(100000);")) {
+                    StringBuilder s = new StringBuilder();
+                    char[] buffer = new char[8192];
+                    int n;
+                    while ((n = reader.read(buffer)) != -1) s.append(buffer, 0, n);
+                    assertEquals(200001, s.length());
+                    assertEquals(-1, s.indexOf("\uFFFD")); // No surrogate pair got split between chunks
+                }
+                // Closing early must not block other results, even if the rest didn't fit into the buffer
+                try (Reader reader = ctx.executeJSAndGetResultReader("var result = 'x'.repeat(10000000);")) {
+                    assertEquals('x', reader.read());
+                }
+                assertEquals("ok", ctx.executeJSAndGetResult("var result = 'ok';"));
+                assertThrows(NodeJsCodeException.class, () -> ctx.executeJSAndGetResultStream("throw new Error('expected');"));
+            }
+        }
+    }
+
+    @Test
+    void testIsolatedResults() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContext ctx1 = new NodeContext(parent, null, 30, NodeContext.Transport.REPL);
+             NodeContext ctx2 = new NodeContext(parent, null, 30, NodeContext.Transport.REPL)) {
+            assertNotEquals(ctx1.contextDir, ctx2.contextDir);
+            assertSame(ctx1.installation, ctx2.installation); // Resolved only once
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (NodeContext ctx : Arrays.asList(ctx1, ctx2)) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        String expected = ctx.contextDir.getName() + i;
+                        assertEquals(expected, ctx.executeJSAndGetResult("var result = '" + expected + "';").trim());
+                    }
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        }
+    }
+
+    @Test
+    void testNoWaiterLeaks() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, null, 1, transport)) {
+                int listeners = ctx.getActiveListenerCount();
+                for (int i = 0; i < 5; i++) {
+                    assertThrows(NodeJsCodeException.class, () -> ctx.executeJavaScript("throw new Error('expected');"));
+                }
+                assertThrows(NodeJsCodeException.class, () -> ctx.executeJavaScript("await sleep(3000);")); // Timeout
+                assertEquals(0, ctx.getActiveWaiterCount());
+                assertEquals(listeners, ctx.getActiveListenerCount());
+            }
+        }
+    }
+
+    @Test
+    void testBuilderAndMemoryUsage() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContextBuilder().parentNodeDir(parent).transport(transport)
+                    .maxOldSpaceSizeMb(64).singleThreadedGc(true).build()) {
+                // Heap limit also contains the young generation, but is far below the default of multiple gigabytes
+                assertTrue(ctx.evaluate("var result = require('v8').getHeapStatistics().heap_size_limit / 1024 / 1024;", Double.class) < 256);
+                assertFalse(ctx.evaluate("var result = typeof gc === 'function';", Boolean.class));
+                NodeMemoryUsage usage = ctx.gc();
+                assertTrue(usage.heapUsed > 0 && usage.heapUsed <= usage.heapTotal);
+                assertTrue(ctx.getMemoryUsage().rss > 0);
+            }
+        }
+    }
+
+    @Test
+    void testSnapshot() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        String initJs = "globalThis.fromSnapshot = require('path').join('a', 'b');";
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContextBuilder().parentNodeDir(parent).transport(transport)
+                    .snapshotInitJs(initJs).build()) {
+                assertNotNull(ctx.snapshotBlob);
+                assertEquals("a/b", ctx.evaluate("var result = fromSnapshot;", String.class).replace("\\", "/"));
+            }
+        }
+    }
+
+    @Test
+    void testCommandCache() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContext ctx = new NodeContext(parent, System.out, 30)) {
+            List<CompletableFuture<Process>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ctx.executeNpmWithArgs("--version");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            Process first = results.get(0).get();
+            assertEquals(0, first.exitValue());
+            for (CompletableFuture<Process> result : results) {
+                assertSame(first, result.get()); // Executed only once
+            }
+        }
+    }
+
+    @Test
+    void testManifest() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContext ctx = new NodeContext(parent, System.out, 30)) {
+            File packageJson = ctx.getPackageJson("@hb-test/manifest-package@1.0.0");
+            packageJson.getParentFile().mkdirs();
+            Files.write(packageJson.toPath(), "{\"name\": \"@hb-test/manifest-package\", \"version\": \"1.0.0\"}".getBytes());
+            assertEquals("1.0.0", NodeManifest.readPackageVersion(packageJson));
+            String key = "npm install @hb-test/manifest-package@1.0.0";
+            ctx.manifest.record(key, "1.0.0", Collections.singletonList(packageJson));
+            assertTrue(ctx.manifest.isSatisfied(key));
+            assertTrue(ctx.manifest.file.exists());
+            ctx.npmInstall("@hb-test/manifest-package@1.0.0"); // Doesn't exist in the registry, thus must be skipped
+
+            // Entry recorded by another process sharing the working dir
+            String manifestJson = new String(Files.readAllBytes(ctx.manifest.file.toPath()));
+            Files.write(ctx.manifest.file.toPath(), manifestJson.replaceFirst("\\{", "{\"other-process\": {\"version\": \"2.0.0\", \"files\": {}},").getBytes());
+            assertEquals("2.0.0", ctx.manifest.getEntry("other-process").version); // Reloaded
+            ctx.manifest.record(key, "1.0.0", Collections.singletonList(packageJson));
+            assertTrue(new String(Files.readAllBytes(ctx.manifest.file.toPath())).contains("other-process")); // Merged, not overwritten
+            ctx.manifest.remove("other-process");
+
+            Files.write(packageJson.toPath(), "{\"name\": \"@hb-test/manifest-package\", \"version\": \"10.0.0\"}".getBytes());
+            assertFalse(ctx.manifest.isSatisfied(key)); // Changed
+            FileUtils.deleteDirectory(packageJson.getParentFile().getParentFile());
+            ctx.manifest.remove(key);
+        }
+    }
+
+    @Test
+    void testLocalPackages() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        File packagesDir = new File(System.getProperty("user.dir")+"/headless-browser/test-packages");
+        FileUtils.deleteDirectory(packagesDir);
+        try (NodeContext ctx = new NodeContextBuilder().parentNodeDir(parent).debugOutput(System.out)
+                .npmPackagesDir(packagesDir).build()) {
+            // Create the tarballs like a pre-populated packages dir would contain them
+            for (String version : new String[]{"1.2.0", "1.10.0"}) {
+                File source = new File(packagesDir + "/source-" + version);
+                source.mkdirs();
+                Files.write(new File(source, "package.json").toPath(),
+                        ("{\"name\": \"hb-local-package\", \"version\": \"" + version + "\"}").getBytes());
+                Files.write(new File(source, "index.js").toPath(), ("module.exports = '" + version + "';").getBytes());
+                assertEquals(0, ctx.executeNpmWithArgs("pack", source.getAbsolutePath(), "--pack-destination", packagesDir.getAbsolutePath()).exitValue());
+            }
+            assertEquals("hb-local-package-1.2.0.tgz", ctx.findLocalPackage("hb-local-package@1.2.0").getName());
+            assertEquals("hb-local-package-1.10.0.tgz", ctx.findLocalPackage("hb-local-package").getName());
+            assertNull(ctx.findLocalPackage("hb-local-package@2.0.0"));
+            assertNull(ctx.findLocalPackage("hb-local-package@^1.2.0")); // Ranges and tags are resolved by npm
+            assertNull(ctx.findLocalPackage("hb-local-package@latest"));
+
+            ctx.npmInstall("hb-local-package"); // Not in the registry, thus must be installed from the tarball
+            assertEquals("1.10.0", ctx.executeJSAndGetResult("var result = require('hb-local-package');").trim());
+            assertTrue(ctx.manifest.isSatisfied("npm install hb-local-package"));
+
+            ctx.manifest.remove("npm install hb-local-package");
+            ctx.executeNpmWithArgs("uninstall", "hb-local-package");
+        } finally {
+            FileUtils.deleteDirectory(packagesDir);
+        }
+    }
+
+    @Test
+    void testParseFinishedMarker() {
+        assertEquals(12, NodeContext.parseFinishedMarker("> Execution of JS-Code(12) finished!"));
+        assertEquals(-1, NodeContext.parseFinishedMarker("Execution of JS-Code(abc) finished!"));
+        assertEquals(-1, NodeContext.parseFinishedMarker("hello"));
+    }
+
+    @Test
+    void testMappedResults() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContext ctx = new NodeContext(parent, System.out, 30, NodeContext.Transport.REPL)) {
+            String js = "var result = 'a\\r\\nb\\n';";
+            assertEquals("a\r\nb\n", ctx.executeJSAndGetResult(js)); // Same value with and without mapped results
+            ctx.enableMappedResults(1024 * 1024);
+            assertEquals("a\r\nb\n", ctx.executeJSAndGetResult(js));
+            for (int i = 0; i < 20; i++) { // Wraps around multiple times
+                assertEquals(50000 + 1, ctx.executeJSAndGetResult("var result = 'ä'.repeat(50000) + '" + i % 10 + "';").length());
+            }
+            assertEquals("a,b", ctx.evaluate("var result = ['a,b'];", String[].class)[0]);
+            try (Reader reader = ctx.executeJSAndGetResultReader("var result = 'xyz';")) {
+                assertEquals('x', reader.read());
+            }
+            assertThrows(RuntimeException.class, () -> ctx.executeJSAndGetResult("var result = 'x'.repeat(2 * 1024 * 1024);"));
+        }
+    }
+
+    @Test
+    void testContextPool() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        try (NodeContextPool pool = new NodeContextPool("test", () -> new NodeContext(parent, System.out, 30),
+                ctx -> ctx.executeJavaScript("var initialised = 'yes';"), 0, 1)) {
+            NodeContext ctx = pool.acquire();
+            assertEquals("yes", ctx.executeJSAndGetResult("var result = initialised;").trim());
+            assertThrows(TimeoutException.class, () -> pool.acquire(100)); // Max size reached
+            pool.release(ctx);
+            assertSame(ctx, pool.acquire(100)); // Reused, not created again
+            pool.release(ctx);
+            assertEquals(1, pool.getSize());
+        }
+    }
+
+    /**
+     * Prints the latency distribution of trivial calls for each {@link NodeContext.Transport}.
+     * Benchmark without assertions, thus only run manually.
+     */
+    @Disabled("Benchmark, run manually")
+    @Test
+    void benchmarkExecuteJavaScriptLatency() throws Exception {
+        File parent = new File(System.getProperty("user.dir")+"/headless-browser/test-node");
+        for (NodeContext.Transport transport : NodeContext.Transport.values()) {
+            try (NodeContext ctx = new NodeContext(parent, null, 30, transport)) {
+                for (int i = 0; i < 20; i++) { // Warm up
+                    ctx.executeJavaScript("var x = 1;");
+                }
+                long[] nanos = new long[200];
+                for (int i = 0; i < nanos.length; i++) {
+                    long start = System.nanoTime();
+                    ctx.executeJavaScript("var x = 1;");
+                    nanos[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(nanos);
+                System.out.printf("%s latency (ms): p50=%.3f p90=%.3f p99=%.3f max=%.3f%n", transport,
+                        nanos[nanos.length / 2] / 1e6, nanos[nanos.length * 9 / 10] / 1e6,
+                        nanos[nanos.length * 99 / 100] / 1e6, nanos[nanos.length - 1] / 1e6);
+            }
+        }
+    }
+
     @Test
     void install() throws Exception {
         //OS.TYPE = OS.Type.LINUX; // Try for a custom OS if needed
@@ -0,0 +1,128 @@
+package com.osiris.headlessbrowser.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloadTest {
+    private final File dir = new File(System.getProperty("user.dir") + "/headless-browser/test-download");
+    private final byte[] content = new byte[5 * 1024 * 1024 + 123];
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private String sha256;
+    private HttpServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        FileUtils.deleteDirectory(dir);
+        dir.mkdirs();
+        new Random(42).nextBytes(content);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        sha256 = hex.toString();
+        byte[] shasums = ("0000000000000000000000000000000000000000000000000000000000000000  other.zip\n"
+                + sha256 + "  node.tar.gz\n").getBytes(StandardCharsets.UTF_8);
+
+        // Local stand-in for a Node.js mirror, that supports range requests like nodejs.org
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/SHASUMS256.txt", exchange -> {
+            exchange.sendResponseHeaders(200, shasums.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(shasums);
+            }
+        });
+        server.createContext("/node.tar.gz", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0, end = content.length - 1;
+            if (range != null) {
+                rangeRequests.incrementAndGet();
+                String[] startEnd = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(startEnd[0]);
+                if (startEnd.length > 1) end = Integer.parseInt(startEnd[1]);
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else
+                exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content, start, end - start + 1);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    void testParallelDownload() throws Exception {
+        String expected = FileDownload.fetchChecksums(baseUrl + "SHASUMS256.txt").get("node.tar.gz");
+        assertEquals(sha256, expected);
+        File dest = new File(dir, "node.tar.gz");
+        new FileDownload(baseUrl + "node.tar.gz", dest).expectedSha256(expected).download();
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        assertEquals(1 + 4, rangeRequests.get()); // Probe + segments
+        assertArrayEquals(new String[]{"node.tar.gz"}, dir.list()); // Part files removed
+    }
+
+    @Test
+    void testSingleSegment() throws Exception {
+        File dest = new File(dir, "node.tar.gz");
+        new FileDownload(baseUrl + "node.tar.gz", dest).segments(1).expectedSha256(sha256).download();
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        assertArrayEquals(new String[]{"node.tar.gz"}, dir.list()); // Part file renamed
+    }
+
+    @Test
+    void testResume() throws Exception {
+        File dest = new File(dir, "node.tar.gz");
+        FileDownload download = new FileDownload(baseUrl + "node.tar.gz", dest).segments(2);
+        // Simulate an interrupted download: first segment complete, second one half written
+        int segmentSize = content.length / 2;
+        Files.write(new File(dir, "node.tar.gz.parts").toPath(),
+                (download.url + "\n" + content.length + "\n2").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, "node.tar.gz.part0").toPath(), Arrays.copyOfRange(content, 0, segmentSize));
+        Files.write(new File(dir, "node.tar.gz.part1").toPath(), Arrays.copyOfRange(content, segmentSize, segmentSize + 1000));
+        download.expectedSha256(sha256).download();
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        assertEquals(1 + 1, rangeRequests.get()); // Probe + rest of the second segment
+    }
+
+    @Test
+    void testChecksumMismatch() {
+        File dest = new File(dir, "node.tar.gz");
+        assertThrows(IOException.class, () -> new FileDownload(baseUrl + "node.tar.gz", dest)
+                .expectedSha256("0000000000000000000000000000000000000000000000000000000000000000").download());
+        assertFalse(dest.exists());
+    }
+
+    @Test
+    void testFileUrl() throws Exception {
+        File source = new File(dir, "source.tar.gz");
+        Files.write(source.toPath(), content);
+        File dest = new File(dir, "node.tar.gz");
+        new FileDownload(source.toURI().toString(), dest).expectedSha256(sha256).download();
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        assertEquals(0, rangeRequests.get());
+    }
+}
@@ -0,0 +1,227 @@
+package com.osiris.headlessbrowser.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class TarGzExtractorTest {
+    private final File dir = new File(System.getProperty("user.dir") + "/headless-browser/test-extract");
+    private final File target = new File(dir, "target");
+    private final File outside = new File(dir, "outside");
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileUtils.deleteDirectory(dir);
+        target.mkdirs();
+        outside.mkdirs();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    void testUstar() throws Exception {
+        String longDir = "node-v1/" + repeat('d', 120); // Stored in the prefix field
+        Tar tar = new Tar()
+                .dir("node-v1/bin/")
+                .file("node-v1/bin/node", 0755, "binary")
+                .file("node-v1/README.md", 0644, "readme")
+                .file(longDir + "/file.txt", 0644, "prefixed");
+        extract(tar, 1);
+        assertEquals("binary", read("bin/node"));
+        assertEquals("readme", read("README.md"));
+        assertEquals("prefixed", read(repeat('d', 120) + "/file.txt"));
+        if (!OS.isWindows()) assertTrue(new File(target, "bin/node").canExecute());
+    }
+
+    @Test
+    void testGnuLongName() throws Exception {
+        String name = "node-v1/" + repeat('a', 150) + "/" + repeat('b', 150) + ".txt";
+        Tar tar = new Tar().entry("././@LongLink", 'L', "", 0644, (name + "\0").getBytes(StandardCharsets.UTF_8))
+                .file("node-v1/truncated", 0644, "long");
+        extract(tar, 1);
+        assertEquals("long", read(repeat('a', 150) + "/" + repeat('b', 150) + ".txt"));
+        assertFalse(new File(target, "truncated").exists());
+    }
+
+    @Test
+    void testPax() throws Exception {
+        String name = "node-v1/" + repeat('p', 200) + ".txt";
+        Tar tar = new Tar().entry("PaxHeaders/x", 'x', "", 0644, paxRecord("path", name))
+                .file("node-v1/truncated", 0644, "pax")
+                .entry("pax_global_header", 'g', "", 0644, paxRecord("comment", "ignored"));
+        extract(tar, 1);
+        assertEquals("pax", read(repeat('p', 200) + ".txt"));
+    }
+
+    @Test
+    void testSymlink() throws Exception {
+        assumeFalse(OS.isWindows());
+        Tar tar = new Tar()
+                .file("node-v1/lib/cli.js", 0755, "cli")
+                .symlink("node-v1/bin/npm", "../lib/cli.js")
+                .symlink("node-v1/bin/self", "npm");
+        extract(tar, 1);
+        assertTrue(Files.isSymbolicLink(target.toPath().resolve("bin/npm")));
+        assertEquals("cli", read("bin/npm"));
+        assertEquals("cli", read("bin/self"));
+
+        assertThrows(IOException.class, () -> extract(new Tar().symlink("node-v1/evil", "../../outside"), 1));
+        assertThrows(IOException.class, () -> extract(new Tar().symlink("node-v1/evil", outside.getAbsolutePath()), 1));
+        // Each link alone stays inside, but combined they lead outside
+        assertThrows(IOException.class, () -> extract(new Tar()
+                .symlink("node-v1/a/b/up", "../..")
+                .symlink("node-v1/a/b/chain", "up/../outside"), 1));
+        assertFalse(Files.exists(target.toPath().resolve("a/b/chain"), java.nio.file.LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    void testSymlinkParent() throws Exception {
+        assumeFalse(OS.isWindows());
+        // For example left behind by a previous extraction
+        Files.createSymbolicLink(target.toPath().resolve("evil"), outside.toPath().toAbsolutePath());
+        assertThrows(IOException.class, () -> extract(new Tar().file("node-v1/evil/file.txt", 0644, "evil"), 1));
+        assertThrows(IOException.class, () -> extract(new Tar().dir("node-v1/evil/sub/"), 1));
+        assertArrayEquals(new String[0], outside.list());
+    }
+
+    @Test
+    void testReplaceExistingSymlink() throws Exception {
+        assumeFalse(OS.isWindows());
+        Path outsideFile = outside.toPath().resolve("file.txt");
+        Files.write(outsideFile, "original".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(target.toPath().resolve("file.txt"), outsideFile.toAbsolutePath());
+        extract(new Tar().file("node-v1/file.txt", 0644, "new"), 1);
+        assertFalse(Files.isSymbolicLink(target.toPath().resolve("file.txt")));
+        assertEquals("new", read("file.txt"));
+        assertEquals("original", new String(Files.readAllBytes(outsideFile), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testHardLink() throws Exception {
+        Tar tar = new Tar()
+                .file("node-v1/bin/node", 0755, "binary")
+                .entry("node-v1/bin/nodejs", '1', "node-v1/bin/node", 0755, new byte[0]);
+        extract(tar, 1);
+        assertEquals("binary", read("bin/nodejs"));
+
+        assertThrows(IOException.class, () -> extract(new Tar()
+                .entry("node-v1/evil", '1', "node-v1/../../outside/file.txt", 0644, new byte[0]), 1));
+        assertThrows(IOException.class, () -> extract(new Tar()
+                .entry("node-v1/missing", '1', "node-v1/does-not-exist", 0644, new byte[0]), 1));
+    }
+
+    @Test
+    void testTraversal() {
+        assertThrows(IOException.class, () -> extract(new Tar().file("node-v1/../../outside/evil.txt", 0644, "evil"), 1));
+        assertThrows(IOException.class, () -> extract(new Tar().file("node-v1/bin/../../../evil.txt", 0644, "evil"), 1));
+        assertArrayEquals(new String[0], outside.list());
+        assertFalse(new File(dir, "evil.txt").exists());
+    }
+
+    private void extract(Tar tar, int stripComponents) throws IOException {
+        TarGzExtractor.extract(new ByteArrayInputStream(tar.toTarGz()), target, stripComponents);
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(target.getPath(), path)), StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < count; i++) s.append(c);
+        return s.toString();
+    }
+
+    private static byte[] paxRecord(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int length = record.getBytes(StandardCharsets.UTF_8).length;
+        int total = length + String.valueOf(length).length();
+        if (String.valueOf(total).length() != String.valueOf(length).length()) total++;
+        return (total + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes minimal ustar archives.
+     */
+    private static class Tar {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Tar file(String name, int mode, String content) throws IOException {
+            return entry(name, '0', "", mode, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Tar dir(String name) throws IOException {
+            return entry(name, '5', "", 0755, new byte[0]);
+        }
+
+        Tar symlink(String name, String linkName) throws IOException {
+            return entry(name, '2', linkName, 0777, new byte[0]);
+        }
+
+        Tar entry(String name, char type, String linkName, int mode, byte[] data) throws IOException {
+            byte[] header = new byte[512];
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 100) { // Split into prefix and name at a slash
+                int slash = name.lastIndexOf('/', name.length() - 2);
+                put(header, 345, name.substring(0, slash));
+                put(header, 0, name.substring(slash + 1));
+            } else
+                put(header, 0, name);
+            put(header, 100, octal(mode, 7));
+            put(header, 108, octal(0, 7));
+            put(header, 116, octal(0, 7));
+            put(header, 124, octal(data.length, 11));
+            put(header, 136, octal(0, 11));
+            header[156] = (byte) type;
+            put(header, 157, linkName);
+            put(header, 257, "ustar\0");
+            put(header, 263, "00");
+            for (int i = 148; i < 156; i++) header[i] = ' ';
+            long checksum = 0;
+            for (byte b : header) checksum += b & 0xff;
+            put(header, 148, octal(checksum, 6) + "\0 ");
+            out.write(header);
+            out.write(data);
+            int padding = (512 - data.length % 512) % 512;
+            out.write(new byte[padding]);
+            return this;
+        }
+
+        byte[] toTarGz() throws IOException {
+            ByteArrayOutputStream gz = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gz)) {
+                gzip.write(out.toByteArray());
+                gzip.write(new byte[1024]); // End of archive marker
+            }
+            return gz.toByteArray();
+        }
+
+        private static String octal(long value, int digits) {
+            StringBuilder s = new StringBuilder(Long.toOctalString(value));
+            while (s.length() < digits) s.insert(0, '0');
+            return s.toString();
+        }
+
+        private static void put(byte[] header, int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.osiris.headlessbrowser.windows;
 
 import com.osiris.headlessbrowser.HBrowser;
 import com.osiris.headlessbrowser.exceptions.NodeJsCodeException;
+import com.osiris.headlessbrowser.js.contexts.NodeContextPool;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Test;
 
@@ -11,9 +12,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class PlaywrightWindowTest {
 
@@ -28,6 +30,66 @@ class PlaywrightWindowTest {
         // TODO give each window its own node context folder
     }
 
+    @Test
+    void testMultiplePages() throws Exception {
+        HBrowser hBrowser = new HBrowser();
+        try (PlaywrightWindow window = hBrowser.openCustomWindow().temporaryUserDataDir(true).debugOutputStream(System.out).headless(true).buildPlaywrightWindow()) {
+            List<PlaywrightPage> pages = new ArrayList<>();
+            List<CompletableFuture<PlaywrightPage>> loads = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                PlaywrightPage page = window.newPage();
+                pages.add(page);
+                loads.add(page.loadAsync("https://example.com/?page=" + i));
+            }
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).get();
+            for (int i = 0; i < pages.size(); i++) {
+                assertEquals("https://example.com/?page=" + i, pages.get(i).getUrl());
+                assertEquals(200, pages.get(i).getStatusCode());
+            }
+            pages.get(0).activate();
+            assertEquals("https://example.com/?page=0", window.executeJSAndGetResult("return window.location.href;"));
+            pages.get(0).close();
+            assertTrue(pages.get(0).isClosed());
+            assertNotEquals(pages.get(0), window.getActivePage());
+        }
+    }
+
+    @Test
+    void testBatch() throws Exception {
+        HBrowser hBrowser = new HBrowser();
+        try (PlaywrightWindow window = hBrowser.openCustomWindow().temporaryUserDataDir(true).debugOutputStream(System.out).headless(true).buildPlaywrightWindow()) {
+            PlaywrightBatch.Results results = window.batch()
+                    .load("https://example.com")
+                    .readStatusCode()
+                    .readTextContent("h1")
+                    .readJSResult("return document.title;")
+                    .execute();
+            assertEquals(200, results.getInt(0));
+            assertEquals("Example Domain", results.getString(1));
+            assertEquals("Example Domain", results.getString(2));
+            assertEquals(200, window.getStatusCode());
+        }
+    }
+
+    @Test
+    void testSharedBrowser() throws Exception {
+        HBrowser hBrowser = new HBrowser();
+        WindowBuilder builder = hBrowser.openCustomWindow().debugOutputStream(System.out).headless(true);
+        try (PlaywrightBrowserServer server = builder.buildPlaywrightBrowserServer();
+             NodeContextPool pool = builder.sharedBrowser(server).buildPlaywrightContextPool(2, 2)) {
+            builder.nodeContextPool(pool);
+            try (PlaywrightWindow window1 = builder.buildPlaywrightWindow();
+                 PlaywrightWindow window2 = builder.buildPlaywrightWindow()) {
+                assertSame(server, window1.getSharedBrowser());
+                window1.load("https://example.com");
+                window2.load("https://example.com");
+                window1.executeJS("document.cookie = 'hb=1';");
+                assertEquals("hb=1", window1.executeJSAndGetResult("return document.cookie;").trim());
+                assertEquals("", window2.executeJSAndGetResult("return document.cookie;").trim()); // Isolated
+            }
+        }
+    }
+
     @Test
     void testConcurrentWindows() throws Exception {
         HBrowser hBrowser = new HBrowser();